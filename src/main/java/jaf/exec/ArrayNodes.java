@@ -0,0 +1,119 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.ArrayValue;
+import jaf.semantics.FrameEnvironment;
+import jaf.semantics.Operations;
+
+final class ArrayNodes {
+
+    private ArrayNodes() {
+    }
+
+    static final class Literal extends Node {
+
+        private final Node[] elements;
+
+        Literal(Node[] elements) {
+            this.elements = elements;
+            for (Node element : elements) {
+                adopt(element);
+            }
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            double[] values = new double[elements.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Operations.toElement(elements[i].execute(context, frame)).getValue();
+            }
+            return context.allocate(new ArrayValue(values));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i] == oldChild) {
+                    elements[i] = newChild;
+                }
+            }
+        }
+    }
+
+    static final class Index extends Node {
+
+        private Node array;
+        private Node index;
+
+        Index(Node array, Node index) {
+            this.array = adopt(array);
+            this.index = adopt(index);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            ArrayValue arrayValue = Operations.toArray(array.execute(context, frame));
+            int i = (int) Operations.toNumber(index.execute(context, frame), "array access");
+            return arrayValue.get(i);
+        }
+
+        @Override
+        double executeDouble(Context context, FrameEnvironment frame) {
+            ArrayValue arrayValue = Operations.toArray(array.execute(context, frame));
+            int i = (int) Operations.toNumber(index.execute(context, frame), "array access");
+            return arrayValue.getDouble(i);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (array == oldChild) {
+                array = newChild;
+            } else if (index == oldChild) {
+                index = newChild;
+            }
+        }
+    }
+
+    static final class Store extends Node {
+
+        private Node array;
+        private Node index;
+        private Node value;
+
+        Store(Node array, Node index, Node value) {
+            this.array = adopt(array);
+            this.index = adopt(index);
+            this.value = adopt(value);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            ArrayValue arrayValue = Operations.toArray(array.execute(context, frame));
+            int i = (int) Operations.toNumber(index.execute(context, frame), "array element assignment");
+            Value result = value.execute(context, frame);
+            arrayValue.set(i, Operations.toElement(result));
+            return result;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (array == oldChild) {
+                array = newChild;
+            } else if (index == oldChild) {
+                index = newChild;
+            } else if (value == oldChild) {
+                value = newChild;
+            }
+        }
+    }
+}
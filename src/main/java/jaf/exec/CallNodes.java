@@ -0,0 +1,348 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.lang.FunctionValue;
+import jaf.lang.Symbol;
+import jaf.lang.VoidValue;
+import jaf.semantics.FrameEnvironment;
+import jaf.semantics.MemoCache;
+import jaf.semantics.Operations;
+import jaf.syntax.FunctionDefinition;
+
+import java.util.Arrays;
+
+final class CallNodes {
+
+    private CallNodes() {
+    }
+
+    static final class Define extends Node {
+
+        private final FunctionDefinition definition;
+        private final Node body;
+
+        Define(FunctionDefinition definition, Node body) {
+            this.definition = definition;
+            this.body = adopt(body);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            context.define(definition, body);
+            FunctionValue function = new FunctionValue(definition, frame);
+            frame.put(0, definition.getSlot(), definition.getFunction(), function);
+            return function;
+        }
+    }
+
+    /**
+     * A call of the function held by a variable. Call sites start
+     * uninitialized and rewrite themselves into an inline cache: monomorphic
+     * for the first definition they call, polymorphic for up to
+     * {@link #MAX_POLYMORPHISM} definitions, and megamorphic beyond that.
+     * Redefining a function creates a new definition, which simply misses
+     * the cache.
+     */
+    abstract static class AbstractCall extends Node {
+
+        static final int MAX_POLYMORPHISM = 4;
+
+        final Symbol name;
+        final int depth;
+        final int slot;
+        final Node[] arguments;
+
+        AbstractCall(Symbol name, int depth, int slot, Node[] arguments) {
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+            this.arguments = arguments;
+            for (Node argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        public final Value execute(Context context, FrameEnvironment frame) {
+            Value callee = slot >= 0 ? frame.find(depth, slot, name) : frame.find(name);
+            Operations.toCallable(callee, name.getName());
+
+            Value[] argumentValues = evaluate(context, frame, arguments);
+
+            if (callee instanceof BuiltinFunctionValue) {
+                return Operations.callBuiltin(((BuiltinFunctionValue) callee).getName(), argumentValues,
+                        context.getOutput());
+            }
+            return dispatch(context, (FunctionValue) callee, argumentValues);
+        }
+
+        abstract Value dispatch(Context context, FunctionValue function, Value[] argumentValues);
+
+        static Value invoke(Context context, FunctionValue function, Node body, Value[] argumentValues) {
+            FunctionDefinition definition = function.getDefinition();
+            Operations.checkArgumentCount(definition.getFunctionName(), definition.getArity(), argumentValues.length);
+            context.tick();
+
+            if (definition.isMemoized() && MemoCache.isCacheable(argumentValues[0])) {
+                MemoCache memo = context.getMemo(definition);
+                Value result = memo.get(argumentValues[0]);
+                if (result == null) {
+                    result = enter(context, function, body, argumentValues);
+                    memo.put(argumentValues[0], result);
+                }
+                return result;
+            }
+            return enter(context, function, body, argumentValues);
+        }
+
+        private static Value enter(Context context, FunctionValue function, Node body, Value[] argumentValues) {
+            FunctionDefinition definition = function.getDefinition();
+            FrameEnvironment callee = new FrameEnvironment(definition.getScope(), function.getClosure());
+            for (int i = 0; i < argumentValues.length; i++) {
+                callee.put(0, i, definition.getParameter(i), argumentValues[i]);
+            }
+
+            return body.execute(context, callee);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            replaceArgument(arguments, oldChild, newChild);
+        }
+    }
+
+    static final class Call extends AbstractCall {
+
+        Call(Symbol name, int depth, int slot, Node[] arguments) {
+            super(name, depth, slot, arguments);
+        }
+
+        @Override
+        Value dispatch(Context context, FunctionValue function, Value[] argumentValues) {
+            FunctionDefinition definition = function.getDefinition();
+            Node body = context.getBody(definition);
+            if (isReplaced()) {
+                return invoke(context, function, body, argumentValues);
+            }
+            return replace(new MonomorphicCall(name, depth, slot, arguments, definition, body))
+                    .dispatch(context, function, argumentValues);
+        }
+    }
+
+    static final class MonomorphicCall extends AbstractCall {
+
+        private final FunctionDefinition definition;
+        private final Node body;
+
+        MonomorphicCall(Symbol name, int depth, int slot, Node[] arguments,
+                        FunctionDefinition definition, Node body) {
+            super(name, depth, slot, arguments);
+            this.definition = definition;
+            this.body = body;
+        }
+
+        @Override
+        Value dispatch(Context context, FunctionValue function, Value[] argumentValues) {
+            if (function.getDefinition() == definition) {
+                return invoke(context, function, body, argumentValues);
+            }
+            if (isReplaced()) {
+                return invoke(context, function, context.getBody(function.getDefinition()), argumentValues);
+            }
+            FunctionDefinition[] definitions = { definition };
+            Node[] bodies = { body };
+            PolymorphicCall cache = new PolymorphicCall(name, depth, slot, arguments, definitions, bodies);
+            return replace(cache.extend(context, function)).dispatch(context, function, argumentValues);
+        }
+    }
+
+    static final class PolymorphicCall extends AbstractCall {
+
+        private final FunctionDefinition[] definitions;
+        private final Node[] bodies;
+
+        PolymorphicCall(Symbol name, int depth, int slot, Node[] arguments,
+                        FunctionDefinition[] definitions, Node[] bodies) {
+            super(name, depth, slot, arguments);
+            this.definitions = definitions;
+            this.bodies = bodies;
+        }
+
+        @Override
+        Value dispatch(Context context, FunctionValue function, Value[] argumentValues) {
+            FunctionDefinition definition = function.getDefinition();
+            for (int i = 0; i < definitions.length; i++) {
+                if (definitions[i] == definition) {
+                    return invoke(context, function, bodies[i], argumentValues);
+                }
+            }
+            if (isReplaced()) {
+                return invoke(context, function, context.getBody(definition), argumentValues);
+            }
+            return replace(extend(context, function)).dispatch(context, function, argumentValues);
+        }
+
+        AbstractCall extend(Context context, FunctionValue function) {
+            if (definitions.length == MAX_POLYMORPHISM) {
+                return new MegamorphicCall(name, depth, slot, arguments);
+            }
+            FunctionDefinition[] extendedDefinitions = Arrays.copyOf(definitions, definitions.length + 1);
+            Node[] extendedBodies = Arrays.copyOf(bodies, bodies.length + 1);
+            extendedDefinitions[definitions.length] = function.getDefinition();
+            extendedBodies[bodies.length] = context.getBody(function.getDefinition());
+            return new PolymorphicCall(name, depth, slot, arguments, extendedDefinitions, extendedBodies);
+        }
+    }
+
+    static final class MegamorphicCall extends AbstractCall {
+
+        MegamorphicCall(Symbol name, int depth, int slot, Node[] arguments) {
+            super(name, depth, slot, arguments);
+        }
+
+        @Override
+        Value dispatch(Context context, FunctionValue function, Value[] argumentValues) {
+            return invoke(context, function, context.getBody(function.getDefinition()), argumentValues);
+        }
+    }
+
+    static final class Length extends Node {
+
+        private Node argument;
+
+        Length(Node argument) {
+            this.argument = adopt(argument);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return Operations.length(argument.execute(context, frame));
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (argument == oldChild) {
+                argument = newChild;
+            }
+        }
+    }
+
+    static final class Print extends Node {
+
+        private Node argument;
+
+        Print(Node argument) {
+            this.argument = adopt(argument);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            context.getOutput().println(argument.execute(context, frame));
+            return VoidValue.INSTANCE;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (argument == oldChild) {
+                argument = newChild;
+            }
+        }
+    }
+
+    static final class Mmap extends Node {
+
+        private Node argument;
+
+        Mmap(Node argument) {
+            this.argument = adopt(argument);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return Operations.mmap(argument.execute(context, frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (argument == oldChild) {
+                argument = newChild;
+            }
+        }
+    }
+
+    static final class Save extends Node {
+
+        private Node array;
+        private Node fileName;
+
+        Save(Node array, Node fileName) {
+            this.array = adopt(array);
+            this.fileName = adopt(fileName);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            Value arrayValue = array.execute(context, frame);
+            return Operations.save(arrayValue, fileName.execute(context, frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (array == oldChild) {
+                array = newChild;
+            } else if (fileName == oldChild) {
+                fileName = newChild;
+            }
+        }
+    }
+
+    /**
+     * A builtin call that has no dedicated node, which is one with the wrong
+     * number of arguments; {@link Operations#callBuiltin} reports it.
+     */
+    static final class Builtin extends Node {
+
+        private final String name;
+        private final Node[] arguments;
+
+        Builtin(String name, Node[] arguments) {
+            this.name = name;
+            this.arguments = arguments;
+            for (Node argument : arguments) {
+                adopt(argument);
+            }
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return Operations.callBuiltin(name, evaluate(context, frame, arguments), context.getOutput());
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            replaceArgument(arguments, oldChild, newChild);
+        }
+    }
+
+    static Value[] evaluate(Context context, FrameEnvironment frame, Node[] arguments) {
+        Value[] values = new Value[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].execute(context, frame);
+        }
+        return values;
+    }
+
+    static void replaceArgument(Node[] arguments, Node oldChild, Node newChild) {
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == oldChild) {
+                arguments[i] = newChild;
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package jaf.exec;
+
+import jaf.lang.AstVisitor;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.Symbol;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.List;
+
+/**
+ * Compiles a resolved program into a tree of {@link Node}s in a single walk.
+ */
+public final class ClosureCompiler implements AstVisitor<Node> {
+
+    private ClosureCompiler() {
+    }
+
+    public static Node compile(List<Expression> program) {
+        return new ControlNodes.Root(new ClosureCompiler().sequence(program));
+    }
+
+    static Node compileFunction(FunctionDefinition definition) {
+        return new ControlNodes.Root(definition.getBody().accept(new ClosureCompiler()));
+    }
+
+    @Override
+    public Node visit(StringLiteral node) {
+        return new ValueNodes.Constant(node.getConstant());
+    }
+
+    @Override
+    public Node visit(NumberLiteral node) {
+        return new ValueNodes.Constant(node.getConstant());
+    }
+
+    @Override
+    public Node visit(IntLiteral node) {
+        return new ValueNodes.Constant(node.getConstant());
+    }
+
+    @Override
+    public Node visit(BinaryOp node) {
+        Node left = node.getLeft().accept(this);
+        Node right = node.getRight().accept(this);
+        if (!left.isNumeric() || !right.isNumeric()) {
+            return new OperatorNodes.Uninitialized(node.getOperator(), left, right);
+        }
+
+        switch (node.getOperator()) {
+            case ADD:
+                return new OperatorNodes.NumericAdd(left, right);
+            case SUBTRACT:
+                return new OperatorNodes.NumericSubtract(left, right);
+            case MULTIPLY:
+                return new OperatorNodes.NumericMultiply(left, right);
+            case DIVIDE:
+                return new OperatorNodes.NumericDivide(left, right);
+            case EQUAL:
+                return new OperatorNodes.NumericEqual(left, right);
+            case NOT_EQUAL:
+                return new OperatorNodes.NumericNotEqual(left, right);
+            case LESS:
+                return new OperatorNodes.NumericLess(left, right);
+            case LESS_EQUAL:
+                return new OperatorNodes.NumericLessEqual(left, right);
+            case GREATER:
+                return new OperatorNodes.NumericGreater(left, right);
+            case GREATER_EQUAL:
+                return new OperatorNodes.NumericGreaterEqual(left, right);
+            default:
+                return new OperatorNodes.Uninitialized(node.getOperator(), left, right);
+        }
+    }
+
+    @Override
+    public Node visit(Variable node) {
+        Symbol name = node.getSymbol();
+
+        if (name.isBuiltin()) {
+            return new ValueNodes.Constant(new BuiltinFunctionValue(name.getName()));
+        }
+        if (node.isResolved()) {
+            return new ValueNodes.SlotRead(node.getDepth(), node.getSlot(), name);
+        }
+        return new ValueNodes.NameRead(name);
+    }
+
+    @Override
+    public Node visit(Assignment node) {
+        Node value = node.getValue().accept(this);
+
+        if (node.isResolved()) {
+            return new ValueNodes.SlotWrite(node.getDepth(), node.getSlot(), node.getVariable(), value);
+        }
+        return new ValueNodes.NameWrite(node.getVariable(), value);
+    }
+
+    @Override
+    public Node visit(Block node) {
+        return sequence(node.getExpressions());
+    }
+
+    @Override
+    public Node visit(IfExpression node) {
+        Node condition = node.getCondition().accept(this);
+        Node thenBranch = node.getThenBranch().accept(this);
+        Node elseBranch = node.hasElseBranch() ? node.getElseBranch().accept(this) : null;
+        return new ControlNodes.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Node visit(WhileExpression node) {
+        return new ControlNodes.While(node.getCondition().accept(this), node.getBody().accept(this));
+    }
+
+    @Override
+    public Node visit(FunctionDefinition node) {
+        if (!node.isResolved()) {
+            throw new JafRuntimeException("Function '" + node.getFunctionName() + "' has not been resolved");
+        }
+        return new CallNodes.Define(node, compileFunction(node));
+    }
+
+    @Override
+    public Node visit(FunctionCall node) {
+        String name = node.getFunctionName();
+        Node[] arguments = compileAll(node.getArguments());
+
+        if (node.isBuiltin()) {
+            if (name.equals("length") && arguments.length == 1) {
+                return new CallNodes.Length(arguments[0]);
+            }
+            if (name.equals("print") && arguments.length == 1) {
+                return new CallNodes.Print(arguments[0]);
+            }
+            if (name.equals("mmap") && arguments.length == 1) {
+                return new CallNodes.Mmap(arguments[0]);
+            }
+            if (name.equals("save") && arguments.length == 2) {
+                return new CallNodes.Save(arguments[0], arguments[1]);
+            }
+            return new CallNodes.Builtin(name, arguments);
+        }
+        return new CallNodes.Call(node.getFunction(), node.getDepth(), node.getSlot(), arguments);
+    }
+
+    @Override
+    public Node visit(ArrayLiteral node) {
+        return new ArrayNodes.Literal(compileAll(node.getElements()));
+    }
+
+    @Override
+    public Node visit(ArrayAccess node) {
+        return new ArrayNodes.Index(node.getArray().accept(this), node.getIndex().accept(this));
+    }
+
+    @Override
+    public Node visit(ArrayAssignment node) {
+        return new ArrayNodes.Store(node.getArray().accept(this), node.getIndex().accept(this),
+                node.getValue().accept(this));
+    }
+
+    private Node sequence(List<Expression> expressions) {
+        Node[] nodes = compileAll(expressions);
+        return nodes.length == 1 ? nodes[0] : new ControlNodes.Sequence(nodes);
+    }
+
+    private Node[] compileAll(List<Expression> expressions) {
+        Node[] nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expressions.get(i).accept(this);
+        }
+        return nodes;
+    }
+}
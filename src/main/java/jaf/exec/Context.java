@@ -0,0 +1,84 @@
+package jaf.exec;
+
+import jaf.lang.ArrayValue;
+import jaf.lang.Governor;
+import jaf.lang.Limits;
+import jaf.semantics.MemoCache;
+import jaf.syntax.FunctionDefinition;
+
+import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public final class Context {
+
+    private final Map<FunctionDefinition, Node> bodies = new IdentityHashMap<>();
+    private final Map<FunctionDefinition, MemoCache> memos = new IdentityHashMap<>();
+    private final Governor governor;
+    private final PrintWriter output;
+
+    public Context() {
+        this(Governor.unsupervised(Limits.DEFAULT));
+    }
+
+    public Context(Governor governor) {
+        this(governor, new PrintWriter(System.out, true));
+    }
+
+    public Context(Governor governor, PrintWriter output) {
+        this.governor = governor;
+        this.output = output;
+    }
+
+    PrintWriter getOutput() {
+        return output;
+    }
+
+    void define(FunctionDefinition definition, Node body) {
+        if (bodies.get(definition) == null) {
+            bodies.put(definition, body);
+        }
+    }
+
+    /**
+     * Returns the compiled body of a definition, compiling it on first use
+     * when the function value came from outside this execution.
+     */
+    Node getBody(FunctionDefinition definition) {
+        Node body = bodies.get(definition);
+        if (body == null) {
+            body = ClosureCompiler.compileFunction(definition);
+            bodies.put(definition, body);
+        }
+        return body;
+    }
+
+    MemoCache getMemo(FunctionDefinition definition) {
+        MemoCache memo = memos.get(definition);
+        if (memo == null) {
+            memo = new MemoCache();
+            memos.put(definition, memo);
+        }
+        return memo;
+    }
+
+    int enterLoop() {
+        return governor.enterLoop();
+    }
+
+    void exitLoop(int outer) {
+        governor.exitLoop(outer);
+    }
+
+    void iterate() {
+        governor.iterate();
+    }
+
+    void tick() {
+        governor.tick();
+    }
+
+    ArrayValue allocate(ArrayValue array) {
+        return governor.allocate(array);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.VoidValue;
+import jaf.semantics.FrameEnvironment;
+import jaf.semantics.Operations;
+
+final class ControlNodes {
+
+    private ControlNodes() {
+    }
+
+    static boolean evaluateCondition(Node condition, Context context, FrameEnvironment frame, String operation) {
+        try {
+            return condition.executeBoolean(context, frame);
+        } catch (UnexpectedResultException e) {
+            return Operations.toBoolean(e.getResult(), operation);
+        }
+    }
+
+    static final class Root extends Node {
+
+        private Node child;
+
+        Root(Node child) {
+            this.child = adopt(child);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return child.execute(context, frame);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return child.isNumeric();
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (child == oldChild) {
+                child = newChild;
+            }
+        }
+    }
+
+    static final class Sequence extends Node {
+
+        private final Node[] nodes;
+
+        Sequence(Node[] nodes) {
+            this.nodes = nodes;
+            for (Node node : nodes) {
+                adopt(node);
+            }
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            Value lastValue = VoidValue.INSTANCE;
+            for (Node node : nodes) {
+                lastValue = node.execute(context, frame);
+            }
+            return lastValue;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return nodes.length > 0 && nodes[nodes.length - 1].isNumeric();
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == oldChild) {
+                    nodes[i] = newChild;
+                }
+            }
+        }
+    }
+
+    static final class If extends Node {
+
+        private Node condition;
+        private Node thenBranch;
+        private Node elseBranch;
+
+        If(Node condition, Node thenBranch, Node elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            if (evaluateCondition(condition, context, frame, "if condition")) {
+                return thenBranch.execute(context, frame);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(context, frame);
+            } else {
+                return VoidValue.INSTANCE;
+            }
+        }
+
+        @Override
+        boolean isNumeric() {
+            return elseBranch != null && thenBranch.isNumeric() && elseBranch.isNumeric();
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (condition == oldChild) {
+                condition = newChild;
+            } else if (thenBranch == oldChild) {
+                thenBranch = newChild;
+            } else if (elseBranch == oldChild) {
+                elseBranch = newChild;
+            }
+        }
+    }
+
+    static final class While extends Node {
+
+        private Node condition;
+        private Node body;
+
+        While(Node condition, Node body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            int outer = context.enterLoop();
+
+            Value lastIterationValue = VoidValue.INSTANCE;
+
+            while (true) {
+                context.iterate();
+
+                if (!evaluateCondition(condition, context, frame, "while condition")) {
+                    break;
+                }
+
+                lastIterationValue = body.execute(context, frame);
+            }
+
+            context.exitLoop(outer);
+            return lastIterationValue;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (condition == oldChild) {
+                condition = newChild;
+            } else if (body == oldChild) {
+                body = newChild;
+            }
+        }
+    }
+}
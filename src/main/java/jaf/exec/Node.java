@@ -0,0 +1,97 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.BitValue;
+import jaf.lang.NumberValue;
+import jaf.semantics.FrameEnvironment;
+
+/**
+ * An executable node produced by {@link ClosureCompiler}. Operators, literal
+ * values and children are fixed when the node is built, so executing it
+ * involves no visitor dispatch and no operator switch.
+ *
+ * Nodes may rewrite themselves while running: a node that has learned
+ * something about the values it sees calls {@link #replace} to swap a more
+ * specialized node into its parent.
+ */
+public abstract class Node {
+
+    private Node parent;
+    private boolean replaced;
+
+    public abstract Value execute(Context context, FrameEnvironment frame);
+
+    /**
+     * Executes the node for a caller that expects a number. Nodes that can
+     * compute their result without boxing override this.
+     *
+     * @throws UnexpectedResultException if the result is not a number
+     */
+    double executeDouble(Context context, FrameEnvironment frame) {
+        return expectDouble(execute(context, frame));
+    }
+
+    /**
+     * Executes the node for a caller that expects a bit.
+     *
+     * @throws UnexpectedResultException if the result is not a bit
+     */
+    boolean executeBoolean(Context context, FrameEnvironment frame) {
+        return expectBoolean(execute(context, frame));
+    }
+
+    static double expectDouble(Value value) {
+        if (value instanceof NumberValue) {
+            return ((NumberValue) value).getValue();
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    static boolean expectBoolean(Value value) {
+        if (value instanceof BitValue) {
+            return ((BitValue) value).getValue();
+        }
+        throw new UnexpectedResultException(value);
+    }
+
+    /**
+     * Whether this node is known at compile time to always produce a
+     * {@link jaf.lang.NumberValue}.
+     */
+    boolean isNumeric() {
+        return false;
+    }
+
+    final <T extends Node> T adopt(T child) {
+        if (child != null) {
+            ((Node) child).parent = this;
+        }
+        return child;
+    }
+
+    final <T extends Node> T replace(T replacement) {
+        if (parent == null) {
+            throw new IllegalStateException("Cannot replace root node " + getClass().getSimpleName());
+        }
+        parent.replaceChild(this, parent.adopt(replacement));
+        replaced = true;
+        return replacement;
+    }
+
+    /**
+     * Whether this node has already been swapped out of the tree. An
+     * activation that was running when a recursive call replaced the node
+     * must not replace it a second time.
+     */
+    final boolean isReplaced() {
+        return replaced;
+    }
+
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children");
+    }
+
+    final Node getParent() {
+        return parent;
+    }
+}
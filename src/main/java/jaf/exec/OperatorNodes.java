@@ -0,0 +1,832 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.BitValue;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.NumberValue;
+import jaf.lang.StringValue;
+import jaf.semantics.FrameEnvironment;
+import jaf.semantics.Operations;
+import jaf.syntax.BinaryOp;
+
+/**
+ * Binary operator nodes.
+ *
+ * When both operands are known to be numbers at compile time the compiler
+ * emits a {@code Numeric*} node that unboxes them without any checks.
+ * Otherwise it emits an {@link Uninitialized} node, which looks at the first
+ * operands it receives and replaces itself with a guarded fast path
+ * ({@code Number*}, {@link StringAdd}, {@link BitAnd}, {@link BitOr}). A fast
+ * path whose guard fails replaces itself with the generic node for its
+ * operator, which handles every type through {@link Operations}.
+ *
+ * Numeric and bit nodes also implement {@link Node#executeDouble} and
+ * {@link Node#executeBoolean}, so operands flow between them as primitives
+ * and a value is boxed only where it leaves the operator tree.
+ */
+final class OperatorNodes {
+
+    private OperatorNodes() {
+    }
+
+    abstract static class BinaryNode extends Node {
+
+        Node left;
+        Node right;
+
+        BinaryNode(Node left, Node right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        final void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild) {
+                left = newChild;
+            } else if (right == oldChild) {
+                right = newChild;
+            }
+        }
+    }
+
+    /**
+     * A binary node that applies its operator to already evaluated operands,
+     * so a node can hand its operands on after replacing itself.
+     */
+    abstract static class ValueBinaryNode extends BinaryNode {
+
+        final BinaryOp.Operator operator;
+
+        ValueBinaryNode(BinaryOp.Operator operator, Node left, Node right) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            Value leftValue = left.execute(context, frame);
+            return apply(leftValue, right.execute(context, frame));
+        }
+
+        abstract Value apply(Value leftValue, Value rightValue);
+
+        final Value generalize(Value leftValue, Value rightValue) {
+            if (isReplaced()) {
+                return Operations.binary(operator, leftValue, rightValue);
+            }
+            return replace(generic(operator, left, right)).apply(leftValue, rightValue);
+        }
+    }
+
+    static ValueBinaryNode generic(BinaryOp.Operator operator, Node left, Node right) {
+        switch (operator) {
+            case ADD: return new Add(left, right);
+            case SUBTRACT: return new Subtract(left, right);
+            case MULTIPLY: return new Multiply(left, right);
+            case DIVIDE: return new Divide(left, right);
+            case EQUAL: return new Equal(left, right);
+            case NOT_EQUAL: return new NotEqual(left, right);
+            case LESS: return new Less(left, right);
+            case LESS_EQUAL: return new LessEqual(left, right);
+            case GREATER: return new Greater(left, right);
+            case GREATER_EQUAL: return new GreaterEqual(left, right);
+            case AND: return new And(left, right);
+            case OR: return new Or(left, right);
+            default:
+                throw new JafRuntimeException("Unknown operator: " + operator);
+        }
+    }
+
+    static final class Uninitialized extends ValueBinaryNode {
+
+        Uninitialized(BinaryOp.Operator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            if (isReplaced()) {
+                return Operations.binary(operator, leftValue, rightValue);
+            }
+            return replace(specialize(leftValue, rightValue)).apply(leftValue, rightValue);
+        }
+
+        private ValueBinaryNode specialize(Value leftValue, Value rightValue) {
+            boolean numbers = leftValue instanceof NumberValue && rightValue instanceof NumberValue;
+            boolean bits = leftValue instanceof BitValue && rightValue instanceof BitValue;
+
+            switch (operator) {
+                case ADD:
+                    if (leftValue instanceof StringValue || rightValue instanceof StringValue) {
+                        return new StringAdd(left, right);
+                    }
+                    return numbers ? new NumberAdd(left, right) : new Add(left, right);
+                case SUBTRACT:
+                    return numbers ? new NumberSubtract(left, right) : new Subtract(left, right);
+                case MULTIPLY:
+                    return numbers ? new NumberMultiply(left, right) : new Multiply(left, right);
+                case DIVIDE:
+                    return numbers ? new NumberDivide(left, right) : new Divide(left, right);
+                case EQUAL:
+                    return numbers ? new NumberEqual(left, right) : new Equal(left, right);
+                case NOT_EQUAL:
+                    return numbers ? new NumberNotEqual(left, right) : new NotEqual(left, right);
+                case LESS:
+                    return numbers ? new NumberLess(left, right) : new Less(left, right);
+                case LESS_EQUAL:
+                    return numbers ? new NumberLessEqual(left, right) : new LessEqual(left, right);
+                case GREATER:
+                    return numbers ? new NumberGreater(left, right) : new Greater(left, right);
+                case GREATER_EQUAL:
+                    return numbers ? new NumberGreaterEqual(left, right) : new GreaterEqual(left, right);
+                case AND:
+                    return bits ? new BitAnd(left, right) : new And(left, right);
+                case OR:
+                    return bits ? new BitOr(left, right) : new Or(left, right);
+                default:
+                    throw new JafRuntimeException("Unknown operator: " + operator);
+            }
+        }
+
+        @Override
+        boolean isNumeric() {
+            return operator == BinaryOp.Operator.SUBTRACT
+                    || operator == BinaryOp.Operator.MULTIPLY
+                    || operator == BinaryOp.Operator.DIVIDE;
+        }
+    }
+
+    static final class Add extends ValueBinaryNode {
+
+        Add(Node left, Node right) {
+            super(BinaryOp.Operator.ADD, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.add(leftValue, rightValue);
+        }
+    }
+
+    static final class Subtract extends ValueBinaryNode {
+
+        Subtract(Node left, Node right) {
+            super(BinaryOp.Operator.SUBTRACT, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.subtract(leftValue, rightValue);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class Multiply extends ValueBinaryNode {
+
+        Multiply(Node left, Node right) {
+            super(BinaryOp.Operator.MULTIPLY, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.multiply(leftValue, rightValue);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class Divide extends ValueBinaryNode {
+
+        Divide(Node left, Node right) {
+            super(BinaryOp.Operator.DIVIDE, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.divide(leftValue, rightValue);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class Equal extends ValueBinaryNode {
+
+        Equal(Node left, Node right) {
+            super(BinaryOp.Operator.EQUAL, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.equal(leftValue, rightValue);
+        }
+    }
+
+    static final class NotEqual extends ValueBinaryNode {
+
+        NotEqual(Node left, Node right) {
+            super(BinaryOp.Operator.NOT_EQUAL, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.notEqual(leftValue, rightValue);
+        }
+    }
+
+    static final class Less extends ValueBinaryNode {
+
+        Less(Node left, Node right) {
+            super(BinaryOp.Operator.LESS, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.less(leftValue, rightValue);
+        }
+    }
+
+    static final class LessEqual extends ValueBinaryNode {
+
+        LessEqual(Node left, Node right) {
+            super(BinaryOp.Operator.LESS_EQUAL, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.lessEqual(leftValue, rightValue);
+        }
+    }
+
+    static final class Greater extends ValueBinaryNode {
+
+        Greater(Node left, Node right) {
+            super(BinaryOp.Operator.GREATER, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.greater(leftValue, rightValue);
+        }
+    }
+
+    static final class GreaterEqual extends ValueBinaryNode {
+
+        GreaterEqual(Node left, Node right) {
+            super(BinaryOp.Operator.GREATER_EQUAL, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.greaterEqual(leftValue, rightValue);
+        }
+    }
+
+    static final class And extends ValueBinaryNode {
+
+        And(Node left, Node right) {
+            super(BinaryOp.Operator.AND, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.and(leftValue, rightValue);
+        }
+    }
+
+    static final class Or extends ValueBinaryNode {
+
+        Or(Node left, Node right) {
+            super(BinaryOp.Operator.OR, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            return Operations.or(leftValue, rightValue);
+        }
+    }
+
+    /**
+     * Fast path for arithmetic on two numbers. Operands are requested
+     * unboxed through {@link Node#executeDouble}, so nested arithmetic only
+     * allocates a {@link NumberValue} where the result leaves the expression.
+     */
+    abstract static class NumberArithmetic extends ValueBinaryNode {
+
+        NumberArithmetic(BinaryOp.Operator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract double compute(double l, double r);
+
+        @Override
+        public final Value execute(Context context, FrameEnvironment frame) {
+            try {
+                return new NumberValue(executeDouble(context, frame));
+            } catch (UnexpectedResultException e) {
+                return e.getResult();
+            }
+        }
+
+        @Override
+        final double executeDouble(Context context, FrameEnvironment frame) {
+            double l;
+            try {
+                l = left.executeDouble(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(e.getResult(), right.execute(context, frame)));
+            }
+            double r;
+            try {
+                r = right.executeDouble(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(new NumberValue(l), e.getResult()));
+            }
+            return compute(l, r);
+        }
+
+        @Override
+        final Value apply(Value leftValue, Value rightValue) {
+            if (leftValue instanceof NumberValue && rightValue instanceof NumberValue) {
+                return new NumberValue(compute(((NumberValue) leftValue).getValue(), ((NumberValue) rightValue).getValue()));
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    abstract static class NumberComparison extends ValueBinaryNode {
+
+        NumberComparison(BinaryOp.Operator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract boolean compare(double l, double r);
+
+        @Override
+        public final Value execute(Context context, FrameEnvironment frame) {
+            try {
+                return BitValue.valueOf(executeBoolean(context, frame));
+            } catch (UnexpectedResultException e) {
+                return e.getResult();
+            }
+        }
+
+        @Override
+        final boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l;
+            try {
+                l = left.executeDouble(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectBoolean(generalize(e.getResult(), right.execute(context, frame)));
+            }
+            double r;
+            try {
+                r = right.executeDouble(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectBoolean(generalize(new NumberValue(l), e.getResult()));
+            }
+            return compare(l, r);
+        }
+
+        @Override
+        final Value apply(Value leftValue, Value rightValue) {
+            if (leftValue instanceof NumberValue && rightValue instanceof NumberValue) {
+                return BitValue.valueOf(compare(((NumberValue) leftValue).getValue(), ((NumberValue) rightValue).getValue()));
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    abstract static class BitLogic extends ValueBinaryNode {
+
+        BitLogic(BinaryOp.Operator operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract boolean combine(boolean l, boolean r);
+
+        @Override
+        public final Value execute(Context context, FrameEnvironment frame) {
+            try {
+                return BitValue.valueOf(executeBoolean(context, frame));
+            } catch (UnexpectedResultException e) {
+                return e.getResult();
+            }
+        }
+
+        @Override
+        final boolean executeBoolean(Context context, FrameEnvironment frame) {
+            boolean l;
+            try {
+                l = left.executeBoolean(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectBoolean(generalize(e.getResult(), right.execute(context, frame)));
+            }
+            boolean r;
+            try {
+                r = right.executeBoolean(context, frame);
+            } catch (UnexpectedResultException e) {
+                return expectBoolean(generalize(BitValue.valueOf(l), e.getResult()));
+            }
+            return combine(l, r);
+        }
+
+        @Override
+        final Value apply(Value leftValue, Value rightValue) {
+            if (leftValue instanceof BitValue && rightValue instanceof BitValue) {
+                return BitValue.valueOf(combine(((BitValue) leftValue).getValue(), ((BitValue) rightValue).getValue()));
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static final class NumberAdd extends NumberArithmetic {
+
+        NumberAdd(Node left, Node right) {
+            super(BinaryOp.Operator.ADD, left, right);
+        }
+
+        @Override
+        double compute(double l, double r) {
+            return l + r;
+        }
+    }
+
+    static final class NumberSubtract extends NumberArithmetic {
+
+        NumberSubtract(Node left, Node right) {
+            super(BinaryOp.Operator.SUBTRACT, left, right);
+        }
+
+        @Override
+        double compute(double l, double r) {
+            return l - r;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumberMultiply extends NumberArithmetic {
+
+        NumberMultiply(Node left, Node right) {
+            super(BinaryOp.Operator.MULTIPLY, left, right);
+        }
+
+        @Override
+        double compute(double l, double r) {
+            return l * r;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumberDivide extends NumberArithmetic {
+
+        NumberDivide(Node left, Node right) {
+            super(BinaryOp.Operator.DIVIDE, left, right);
+        }
+
+        @Override
+        double compute(double l, double r) {
+            if (r == 0) {
+                throw new JafRuntimeException("Division by zero");
+            }
+            return l / r;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumberEqual extends NumberComparison {
+
+        NumberEqual(Node left, Node right) {
+            super(BinaryOp.Operator.EQUAL, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l == r;
+        }
+    }
+
+    static final class NumberNotEqual extends NumberComparison {
+
+        NumberNotEqual(Node left, Node right) {
+            super(BinaryOp.Operator.NOT_EQUAL, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l != r;
+        }
+    }
+
+    static final class NumberLess extends NumberComparison {
+
+        NumberLess(Node left, Node right) {
+            super(BinaryOp.Operator.LESS, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l < r;
+        }
+    }
+
+    static final class NumberLessEqual extends NumberComparison {
+
+        NumberLessEqual(Node left, Node right) {
+            super(BinaryOp.Operator.LESS_EQUAL, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l <= r;
+        }
+    }
+
+    static final class NumberGreater extends NumberComparison {
+
+        NumberGreater(Node left, Node right) {
+            super(BinaryOp.Operator.GREATER, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l > r;
+        }
+    }
+
+    static final class NumberGreaterEqual extends NumberComparison {
+
+        NumberGreaterEqual(Node left, Node right) {
+            super(BinaryOp.Operator.GREATER_EQUAL, left, right);
+        }
+
+        @Override
+        boolean compare(double l, double r) {
+            return l >= r;
+        }
+    }
+
+    static final class StringAdd extends ValueBinaryNode {
+
+        StringAdd(Node left, Node right) {
+            super(BinaryOp.Operator.ADD, left, right);
+        }
+
+        @Override
+        Value apply(Value leftValue, Value rightValue) {
+            if (leftValue instanceof StringValue || rightValue instanceof StringValue) {
+                return Operations.add(leftValue, rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static final class BitAnd extends BitLogic {
+
+        BitAnd(Node left, Node right) {
+            super(BinaryOp.Operator.AND, left, right);
+        }
+
+        @Override
+        boolean combine(boolean l, boolean r) {
+            return l && r;
+        }
+    }
+
+    static final class BitOr extends BitLogic {
+
+        BitOr(Node left, Node right) {
+            super(BinaryOp.Operator.OR, left, right);
+        }
+
+        @Override
+        boolean combine(boolean l, boolean r) {
+            return l || r;
+        }
+    }
+
+    static final class NumericAdd extends BinaryNode {
+
+        NumericAdd(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return new NumberValue(executeDouble(context, frame));
+        }
+
+        @Override
+        double executeDouble(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l + right.executeDouble(context, frame);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumericSubtract extends BinaryNode {
+
+        NumericSubtract(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return new NumberValue(executeDouble(context, frame));
+        }
+
+        @Override
+        double executeDouble(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l - right.executeDouble(context, frame);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumericMultiply extends BinaryNode {
+
+        NumericMultiply(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return new NumberValue(executeDouble(context, frame));
+        }
+
+        @Override
+        double executeDouble(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l * right.executeDouble(context, frame);
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+
+    static final class NumericLess extends BinaryNode {
+
+        NumericLess(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l < right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericLessEqual extends BinaryNode {
+
+        NumericLessEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l <= right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericGreater extends BinaryNode {
+
+        NumericGreater(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l > right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericGreaterEqual extends BinaryNode {
+
+        NumericGreaterEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l >= right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericEqual extends BinaryNode {
+
+        NumericEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l == right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericNotEqual extends BinaryNode {
+
+        NumericNotEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return BitValue.valueOf(executeBoolean(context, frame));
+        }
+
+        @Override
+        boolean executeBoolean(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            return l != right.executeDouble(context, frame);
+        }
+    }
+
+    static final class NumericDivide extends BinaryNode {
+
+        NumericDivide(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return new NumberValue(executeDouble(context, frame));
+        }
+
+        @Override
+        double executeDouble(Context context, FrameEnvironment frame) {
+            double l = left.executeDouble(context, frame);
+            double divisor = right.executeDouble(context, frame);
+            if (divisor == 0) {
+                throw new JafRuntimeException("Division by zero");
+            }
+            return l / divisor;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+    }
+}
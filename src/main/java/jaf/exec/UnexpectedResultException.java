@@ -0,0 +1,23 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+
+/**
+ * Thrown by {@link Node#executeDouble} and {@link Node#executeBoolean} when
+ * the node produced a value of another type. The value is carried along so
+ * the caller can continue on the generic path without evaluating the node
+ * again.
+ */
+final class UnexpectedResultException extends RuntimeException {
+
+    private final Value result;
+
+    UnexpectedResultException(Value result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+
+    Value getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package jaf.exec;
+
+import jaf.lang.Value;
+import jaf.lang.NumberValue;
+import jaf.lang.Symbol;
+import jaf.semantics.FrameEnvironment;
+
+final class ValueNodes {
+
+    private ValueNodes() {
+    }
+
+    static final class Constant extends Node {
+
+        private final Value value;
+
+        Constant(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return value;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return value instanceof NumberValue;
+        }
+    }
+
+    static final class SlotRead extends Node {
+
+        private final int depth;
+        private final int slot;
+        private final Symbol name;
+
+        SlotRead(int depth, int slot, Symbol name) {
+            this.depth = depth;
+            this.slot = slot;
+            this.name = name;
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return frame.get(depth, slot, name);
+        }
+    }
+
+    static final class NameRead extends Node {
+
+        private final Symbol name;
+
+        NameRead(Symbol name) {
+            this.name = name;
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            return frame.get(name);
+        }
+    }
+
+    static final class SlotWrite extends Node {
+
+        private final int depth;
+        private final int slot;
+        private final Symbol name;
+        private Node value;
+
+        SlotWrite(int depth, int slot, Symbol name, Node value) {
+            this.depth = depth;
+            this.slot = slot;
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            Value result = value.execute(context, frame);
+            frame.put(depth, slot, name, result);
+            return result;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return value.isNumeric();
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) {
+                value = newChild;
+            }
+        }
+    }
+
+    static final class NameWrite extends Node {
+
+        private final Symbol name;
+        private Node value;
+
+        NameWrite(Symbol name, Node value) {
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        public Value execute(Context context, FrameEnvironment frame) {
+            Value result = value.execute(context, frame);
+            frame.put(name, result);
+            return result;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return value.isNumeric();
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (value == oldChild) {
+                value = newChild;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package jaf.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for version 49 class files. Version 49 predates stack map
+ * frames, so the JVM verifies generated methods by type inference and the
+ * assembler only has to track the maximum operand stack depth.
+ */
+final class ClassAssembler {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassAssembler(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    Code method(int access, String name, String descriptor, int maxLocals) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register("U" + value, 1);
+    }
+
+    int classRef(String internalName) {
+        return constant("C" + internalName, 7, utf8(internalName), -1);
+    }
+
+    int string(String value) {
+        return constant("S" + value, 8, utf8(value), -1);
+    }
+
+    int doubleConstant(double value) {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(6);
+            pool.writeDouble(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key, 2);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int nameAndType = constant("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+        return constant("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType);
+    }
+
+    private int constant(String key, int tag, int first, int second) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0) {
+                pool.writeShort(second);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return register(key, 1);
+    }
+
+    private int register(String key, int width) {
+        int index = poolCount;
+        poolCount += width;
+        if (poolCount > 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int codeAttribute = utf8("Code");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.writeTo(out, codeAttribute);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static final class Label {
+
+        private int position = -1;
+        private final List<Integer> references = new ArrayList<>();
+    }
+
+    static final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final int maxLocals;
+
+        private byte[] code = new byte[64];
+        private int size = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+
+        private Code(int access, int name, int descriptor, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        Code op(int opcode, int stackEffect) {
+            emitByte(opcode);
+            adjustStack(stackEffect);
+            return this;
+        }
+
+        Code op(int opcode, int operand, int stackEffect) {
+            emitByte(opcode);
+            emitShort(operand);
+            adjustStack(stackEffect);
+            return this;
+        }
+
+        Code jump(int opcode, Label target, int stackEffect) {
+            int at = size;
+            emitByte(opcode);
+            if (target.position >= 0) {
+                emitShort(checkOffset(target.position - at));
+            } else {
+                target.references.add(at);
+                emitShort(0);
+            }
+            adjustStack(stackEffect);
+            return this;
+        }
+
+        void mark(Label label) {
+            label.position = size;
+            for (int at : label.references) {
+                int offset = checkOffset(size - at);
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+            label.references.clear();
+        }
+
+        private static int checkOffset(int offset) {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch offset out of range");
+            }
+            return offset;
+        }
+
+        int stackDepth() {
+            return stack;
+        }
+
+        void setStackDepth(int depth) {
+            stack = depth;
+        }
+
+        private void adjustStack(int effect) {
+            stack += effect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void emitByte(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = (byte) value;
+        }
+
+        private void emitShort(int value) {
+            emitByte(value >> 8);
+            emitByte(value);
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            if (size > 0xFFFF) {
+                throw new IllegalStateException("Method too large");
+            }
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + size);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(size);
+            out.write(code, 0, size);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package jaf.jit;
+
+import jaf.syntax.FunctionDefinition;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled code shared by every execution of one program, so a definition
+ * that turned hot in one run starts compiled in the next. Definitions the
+ * compiler rejects are remembered as well. Two threads that reach the
+ * threshold together may both compile; the first result wins.
+ */
+public final class CodeCache {
+
+    private static final NumericFunction REJECTED = new NumericFunction() {
+        @Override
+        public double apply(double argument) {
+            throw new IllegalStateException("Rejected function");
+        }
+    };
+
+    private final ConcurrentMap<FunctionDefinition, NumericFunction> compiled = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the code already compiled for the definition, or null.
+     */
+    public NumericFunction lookup(FunctionDefinition definition) {
+        NumericFunction function = compiled.get(definition);
+        return function != REJECTED ? function : null;
+    }
+
+    public boolean isRejected(FunctionDefinition definition) {
+        return compiled.get(definition) == REJECTED;
+    }
+
+    /**
+     * Compiles the definition unless an earlier execution already has, and
+     * returns the shared code, or null when the definition cannot be compiled.
+     */
+    public NumericFunction compile(FunctionDefinition definition) {
+        NumericFunction function = compiled.get(definition);
+        if (function == null) {
+            function = JitCompiler.compile(definition);
+            if (function == null) {
+                function = REJECTED;
+            }
+            NumericFunction previous = compiled.putIfAbsent(definition, function);
+            if (previous != null) {
+                function = previous;
+            }
+        }
+        return function != REJECTED ? function : null;
+    }
+}
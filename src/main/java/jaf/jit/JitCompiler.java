@@ -0,0 +1,327 @@
+package jaf.jit;
+
+import jaf.lang.AstVisitor;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.JafVisitorException;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles pure numeric bodies of one-parameter functions to JVM bytecode.
+ *
+ * The supported subset is number literals, reads of the parameter,
+ * arithmetic, comparisons, logic, if/else, blocks and calls of the function
+ * itself. Under the assumption that the parameter is a number, every
+ * expression in that subset has a static type (number or bit), so the body
+ * becomes a static {@code double run(double)} method that HotSpot can
+ * inline and optimize like ordinary Java code. Anything outside the subset
+ * makes {@link #compile} return {@code null}.
+ */
+public final class JitCompiler implements AstVisitor<JitCompiler.Kind> {
+
+    enum Kind { NUMBER, BIT }
+
+    private static final String PACKAGE = "jaf/jit/gen/";
+    private static final String EXCEPTION = "jaf/lang/JafRuntimeException";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD_0 = 0x26;
+    private static final int DLOAD_1 = 0x27;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int POP = 0x57;
+    private static final int POP2 = 0x58;
+    private static final int DUP = 0x59;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int I2D = 0x87;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+
+    private final FunctionDefinition definition;
+    private final String className;
+    private final ClassAssembler assembler;
+    private final ClassAssembler.Code code;
+
+    private JitCompiler(FunctionDefinition definition, String className,
+                        ClassAssembler assembler, ClassAssembler.Code code) {
+        this.definition = definition;
+        this.className = className;
+        this.assembler = assembler;
+        this.code = code;
+    }
+
+    public static NumericFunction compile(FunctionDefinition definition) {
+        if (!definition.isResolved() || definition.getArity() != 1) {
+            return null;
+        }
+
+        String className = PACKAGE + "Function" + COUNTER.incrementAndGet();
+        ClassAssembler assembler = new ClassAssembler(className, "java/lang/Object", "jaf/jit/NumericFunction");
+
+        ClassAssembler.Code run = assembler.method(
+                ClassAssembler.ACC_PUBLIC | ClassAssembler.ACC_STATIC, "run", "(D)D", 2);
+        try {
+            JitCompiler compiler = new JitCompiler(definition, className, assembler, run);
+            if (definition.getBody().accept(compiler) != Kind.NUMBER) {
+                return null;
+            }
+            run.op(DRETURN, -2);
+
+            assembler.method(ClassAssembler.ACC_PUBLIC, "<init>", "()V", 1)
+                    .op(ALOAD_0, 1)
+                    .op(INVOKESPECIAL, assembler.methodRef("java/lang/Object", "<init>", "()V"), -1)
+                    .op(RETURN, 0);
+
+            assembler.method(ClassAssembler.ACC_PUBLIC, "apply", "(D)D", 3)
+                    .op(DLOAD_1, 2)
+                    .op(INVOKESTATIC, assembler.methodRef(className, "run", "(D)D"), 0)
+                    .op(DRETURN, -2);
+
+            byte[] bytes = assembler.toByteArray();
+            Class<?> type = new FunctionLoader().define(className.replace('/', '.'), bytes);
+            return (NumericFunction) type.getConstructor().newInstance();
+        } catch (JafVisitorException | IllegalStateException e) {
+            return null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new JafRuntimeException("JIT compilation of '" + definition.getFunctionName() + "' failed", e);
+        }
+    }
+
+    @Override
+    public Kind visit(NumberLiteral node) {
+        pushDouble(node.getValue());
+        return Kind.NUMBER;
+    }
+
+    @Override
+    public Kind visit(IntLiteral node) {
+        pushDouble(node.getValue());
+        return Kind.NUMBER;
+    }
+
+    @Override
+    public Kind visit(Variable node) {
+        if (!node.isResolved() || node.getDepth() != 0 || node.getSlot() != 0
+                || !node.getName().equals(definition.getParameterName(0))) {
+            throw new JafVisitorException("Only the parameter can be read in compiled code");
+        }
+        code.op(DLOAD_0, 2);
+        return Kind.NUMBER;
+    }
+
+    @Override
+    public Kind visit(BinaryOp node) {
+        switch (node.getOperator()) {
+            case ADD:
+                arithmetic(node, DADD);
+                return Kind.NUMBER;
+            case SUBTRACT:
+                arithmetic(node, DSUB);
+                return Kind.NUMBER;
+            case MULTIPLY:
+                arithmetic(node, DMUL);
+                return Kind.NUMBER;
+            case DIVIDE:
+                divide(node);
+                return Kind.NUMBER;
+            case EQUAL:
+                return compare(node, DCMPL, IFNE);
+            case NOT_EQUAL:
+                return compare(node, DCMPL, IFEQ);
+            case LESS:
+                return compare(node, DCMPG, IFGE);
+            case LESS_EQUAL:
+                return compare(node, DCMPG, IFGT);
+            case GREATER:
+                return compare(node, DCMPL, IFLE);
+            case GREATER_EQUAL:
+                return compare(node, DCMPL, IFLT);
+            case AND:
+                logic(node, IAND);
+                return Kind.BIT;
+            case OR:
+                logic(node, IOR);
+                return Kind.BIT;
+            default:
+                throw new JafVisitorException("Unsupported operator: " + node.getOperator());
+        }
+    }
+
+    @Override
+    public Kind visit(Block node) {
+        List<Expression> expressions = node.getExpressions();
+        if (expressions.isEmpty()) {
+            throw new JafVisitorException("Empty block produces void");
+        }
+
+        Kind kind = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            if (kind != null) {
+                code.op(kind == Kind.NUMBER ? POP2 : POP, kind == Kind.NUMBER ? -2 : -1);
+            }
+            kind = expressions.get(i).accept(this);
+        }
+        return kind;
+    }
+
+    @Override
+    public Kind visit(IfExpression node) {
+        if (!node.hasElseBranch()) {
+            throw new JafVisitorException("If without else may produce void");
+        }
+
+        toBit(node.getCondition().accept(this));
+        ClassAssembler.Label elseBranch = new ClassAssembler.Label();
+        ClassAssembler.Label end = new ClassAssembler.Label();
+        code.jump(IFEQ, elseBranch, -1);
+
+        int depth = code.stackDepth();
+        Kind thenKind = node.getThenBranch().accept(this);
+        code.jump(GOTO, end, 0);
+
+        code.mark(elseBranch);
+        code.setStackDepth(depth);
+        Kind elseKind = node.getElseBranch().accept(this);
+        if (elseKind != thenKind) {
+            throw new JafVisitorException("If branches produce different types");
+        }
+
+        code.mark(end);
+        return thenKind;
+    }
+
+    @Override
+    public Kind visit(FunctionCall node) {
+        // The function's own name is bound in the frame enclosing its body.
+        if (!node.isResolved() || node.getDepth() != 1 || node.getSlot() != definition.getSlot()
+                || !node.getFunctionName().equals(definition.getFunctionName())
+                || node.getArgumentCount() != 1) {
+            throw new JafVisitorException("Only self-recursive calls can be compiled");
+        }
+        if (node.getArguments().get(0).accept(this) != Kind.NUMBER) {
+            throw new JafVisitorException("Argument must be a number");
+        }
+        code.op(INVOKESTATIC, assembler.methodRef(className, "run", "(D)D"), 0);
+        return Kind.NUMBER;
+    }
+
+    private void arithmetic(BinaryOp node, int opcode) {
+        toNumber(node.getLeft().accept(this));
+        toNumber(node.getRight().accept(this));
+        code.op(opcode, -2);
+    }
+
+    private void divide(BinaryOp node) {
+        toNumber(node.getLeft().accept(this));
+        toNumber(node.getRight().accept(this));
+
+        ClassAssembler.Label nonZero = new ClassAssembler.Label();
+        code.op(DUP2, 2).op(DCONST_0, 2).op(DCMPL, -3);
+        code.jump(IFNE, nonZero, -1);
+
+        int depth = code.stackDepth();
+        code.op(NEW, assembler.classRef(EXCEPTION), 1)
+                .op(DUP, 1)
+                .op(LDC_W, assembler.string("Division by zero"), 1)
+                .op(INVOKESPECIAL, assembler.methodRef(EXCEPTION, "<init>", "(Ljava/lang/String;)V"), -2)
+                .op(ATHROW, -1);
+        code.setStackDepth(depth);
+
+        code.mark(nonZero);
+        code.op(DDIV, -2);
+    }
+
+    private Kind compare(BinaryOp node, int compareOpcode, int falseJump) {
+        toNumber(node.getLeft().accept(this));
+        toNumber(node.getRight().accept(this));
+        code.op(compareOpcode, -3);
+        branchToBit(falseJump);
+        return Kind.BIT;
+    }
+
+    private void logic(BinaryOp node, int opcode) {
+        toBit(node.getLeft().accept(this));
+        toBit(node.getRight().accept(this));
+        code.op(opcode, -1);
+    }
+
+    private void toNumber(Kind kind) {
+        if (kind == Kind.BIT) {
+            code.op(I2D, 1);
+        }
+    }
+
+    private void toBit(Kind kind) {
+        if (kind == Kind.NUMBER) {
+            code.op(DCONST_0, 2).op(DCMPL, -3);
+            branchToBit(IFEQ);
+        }
+    }
+
+    private void branchToBit(int falseJump) {
+        ClassAssembler.Label isFalse = new ClassAssembler.Label();
+        ClassAssembler.Label end = new ClassAssembler.Label();
+        code.jump(falseJump, isFalse, -1);
+        code.op(ICONST_1, 1);
+        code.jump(GOTO, end, 0);
+        code.mark(isFalse);
+        code.setStackDepth(code.stackDepth() - 1);
+        code.op(ICONST_0, 1);
+        code.mark(end);
+    }
+
+    private void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.op(DCONST_0, 2);
+        } else if (value == 1.0) {
+            code.op(DCONST_1, 2);
+        } else {
+            code.op(LDC2_W, assembler.doubleConstant(value), 2);
+        }
+    }
+
+    private static final class FunctionLoader extends ClassLoader {
+
+        FunctionLoader() {
+            super(JitCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
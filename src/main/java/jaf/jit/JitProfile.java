@@ -0,0 +1,55 @@
+package jaf.jit;
+
+import jaf.syntax.FunctionDefinition;
+
+/**
+ * Call-count profile of one function definition. Once the definition has been
+ * called {@link #THRESHOLD} times it is handed to {@link JitCompiler}; calls
+ * whose argument breaks the compiled code's assumptions deoptimize back to
+ * the interpreter, and a definition that deoptimizes too often is abandoned.
+ * A profile belongs to one execution; the compiled code itself comes from a
+ * {@link CodeCache} that executions of the same program share.
+ */
+public final class JitProfile {
+
+    public static final int THRESHOLD = Integer.getInteger("jaf.jit.threshold", 1000);
+
+    private static final int MAX_DEOPTIMIZATIONS = 100;
+
+    private final FunctionDefinition definition;
+    private final CodeCache cache;
+    private int callCount = 0;
+    private int deoptimizations = 0;
+    private boolean rejected;
+    private NumericFunction compiled;
+
+    public JitProfile(FunctionDefinition definition, CodeCache cache) {
+        this.definition = definition;
+        this.cache = cache;
+        this.rejected = THRESHOLD <= 0 || cache.isRejected(definition);
+        this.compiled = rejected ? null : cache.lookup(definition);
+    }
+
+    public FunctionDefinition getDefinition() {
+        return definition;
+    }
+
+    public NumericFunction recordCall() {
+        if (compiled == null && !rejected && ++callCount >= THRESHOLD) {
+            compiled = cache.compile(definition);
+            rejected = compiled == null;
+        }
+        return compiled;
+    }
+
+    public void deoptimize() {
+        if (++deoptimizations >= MAX_DEOPTIMIZATIONS) {
+            compiled = null;
+            rejected = true;
+        }
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+}
@@ -0,0 +1,9 @@
+package jaf.jit;
+
+/**
+ * Entry point of a function body compiled to JVM bytecode by {@link JitCompiler}.
+ */
+public interface NumericFunction {
+
+    double apply(double argument);
+}
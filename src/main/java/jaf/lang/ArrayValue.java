@@ -1,48 +1,304 @@
 package jaf.lang;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
+/**
+ * A fixed-size array of numbers stored in primitive form. Each array uses the
+ * most compact storage that holds its elements: one bit per element while
+ * every element is 0 or 1, an {@code int} while every element is a 32-bit
+ * integer, and a {@code double} otherwise. Storing an element that does not
+ * fit widens the storage in place; it never narrows again.
+ *
+ * Arrays created by {@link #map} keep their elements off the heap in a
+ * memory-mapped file of little-endian doubles, so the operating system pages
+ * the data in on demand and stores write through to the file. {@link #save}
+ * writes any array in the same format.
+ */
 public final class ArrayValue implements Value {
 
-    private final List<NumberValue> elements;
+    public enum Kind { BIT, INT32, DOUBLE, MAPPED }
+
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    private static final int SEGMENT_SHIFT = 27;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int SAVE_BUFFER_SIZE = 1 << 16;
+
+    private final int size;
+    private Kind kind;
+    private long[] bits;
+    private int[] ints;
+    private double[] doubles;
+    private DoubleBuffer[] segments;
+    private boolean readOnly;
 
     public ArrayValue(List<NumberValue> elements) {
-        this.elements = new ArrayList<>(elements);
+        this(toDoubles(elements));
     }
 
     public ArrayValue(int size) {
-        this.elements = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            elements.add(new NumberValue(0));
+        this.size = size;
+        this.kind = Kind.BIT;
+        this.bits = new long[wordCount(size)];
+    }
+
+    /**
+     * Creates an array holding the given elements in the most compact
+     * storage that fits them. The array is not retained.
+     */
+    public ArrayValue(double[] elements) {
+        this.size = elements.length;
+        this.kind = narrowestKind(elements);
+
+        switch (kind) {
+            case BIT:
+                bits = new long[wordCount(size)];
+                for (int i = 0; i < size; i++) {
+                    if (elements[i] != 0) {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            case INT32:
+                ints = new int[size];
+                for (int i = 0; i < size; i++) {
+                    ints[i] = (int) elements[i];
+                }
+                break;
+            default:
+                doubles = elements.clone();
+                break;
+        }
+    }
+
+    private ArrayValue(int size, DoubleBuffer[] segments, boolean readOnly) {
+        this.size = size;
+        this.kind = Kind.MAPPED;
+        this.segments = segments;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Maps a file of little-endian doubles as an array. The file is mapped
+     * read-only when it cannot be opened for writing.
+     */
+    public static ArrayValue map(String fileName) {
+        try {
+            FileChannel channel;
+            boolean readOnly = false;
+            try {
+                channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (AccessDeniedException e) {
+                channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+                readOnly = true;
+            }
+
+            try {
+                long bytes = channel.size();
+                if (bytes % Double.BYTES != 0) {
+                    throw new JafRuntimeException("File '" + fileName + "' is not a sequence of 8-byte doubles");
+                }
+                long count = bytes / Double.BYTES;
+                if (count > Integer.MAX_VALUE) {
+                    throw new JafRuntimeException("File '" + fileName + "' has too many elements: " + count);
+                }
+
+                DoubleBuffer[] segments = new DoubleBuffer[(int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+                FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+                for (int i = 0; i < segments.length; i++) {
+                    long first = (long) i << SEGMENT_SHIFT;
+                    long length = Math.min(SEGMENT_SIZE, count - first);
+                    segments[i] = channel.map(mode, first * Double.BYTES, length * Double.BYTES)
+                            .order(ByteOrder.LITTLE_ENDIAN)
+                            .asDoubleBuffer();
+                }
+                return new ArrayValue((int) count, segments, readOnly);
+            } finally {
+                channel.close();
+            }
+        } catch (NoSuchFileException e) {
+            throw new JafRuntimeException("File not found: '" + fileName + "'", e);
+        } catch (IOException e) {
+            throw new JafRuntimeException("Cannot map file '" + fileName + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the elements to a file as little-endian doubles. The file is
+     * truncated only after writing, so an array can be saved over the file
+     * it is mapped from.
+     */
+    public void save(String fileName) {
+        ByteBuffer buffer = ByteBuffer.allocate(SAVE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            for (int i = 0; i < size; i++) {
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+                buffer.putDouble(getDouble(i));
+            }
+            write(channel, buffer);
+            channel.truncate((long) size * Double.BYTES);
+        } catch (IOException e) {
+            throw new JafRuntimeException("Cannot write file '" + fileName + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
+        buffer.clear();
     }
 
     public int size() {
-        return elements.size();
+        return size;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public double getDouble(int index) {
+        checkBounds(index);
+        switch (kind) {
+            case BIT:
+                return (bits[index >>> 6] >>> index & 1L) != 0 ? 1 : 0;
+            case INT32:
+                return ints[index];
+            case MAPPED:
+                return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+            default:
+                return doubles[index];
+        }
     }
 
     public NumberValue get(int index) {
+        return NumberValue.valueOf(getDouble(index));
+    }
+
+    public void set(int index, double value) {
         checkBounds(index);
-        return elements.get(index);
+        if (readOnly) {
+            throw new JafRuntimeException("Array is read-only");
+        }
+        if (kind == Kind.BIT && !fitsBit(value)) {
+            widen(fitsInt(value) ? Kind.INT32 : Kind.DOUBLE);
+        } else if (kind == Kind.INT32 && !fitsInt(value)) {
+            widen(Kind.DOUBLE);
+        }
+
+        switch (kind) {
+            case BIT:
+                if (value != 0) {
+                    bits[index >>> 6] |= 1L << index;
+                } else {
+                    bits[index >>> 6] &= ~(1L << index);
+                }
+                break;
+            case INT32:
+                ints[index] = (int) value;
+                break;
+            case MAPPED:
+                segments[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, value);
+                break;
+            default:
+                doubles[index] = value;
+                break;
+        }
     }
 
     public void set(int index, NumberValue value) {
-        checkBounds(index);
-        elements.set(index, value);
+        set(index, value.getValue());
     }
 
     private void checkBounds(int index) {
-        if (index < 0 || index >= elements.size()) {
+        if (index < 0 || index >= size) {
             throw new JafRuntimeException(
                     String.format("Array index out of bounds: %d (size: %d)",
-                            index, elements.size())
+                            index, size)
             );
         }
     }
 
+    private void widen(Kind target) {
+        if (target == Kind.INT32) {
+            ints = new int[size];
+            for (int i = 0; i < size; i++) {
+                ints[i] = (int) getDouble(i);
+            }
+        } else {
+            doubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                doubles[i] = getDouble(i);
+            }
+            ints = null;
+        }
+        bits = null;
+        kind = target;
+    }
+
+    private static Kind narrowestKind(double[] elements) {
+        Kind kind = Kind.BIT;
+        for (double element : elements) {
+            if (!fitsInt(element)) {
+                return Kind.DOUBLE;
+            }
+            if (!fitsBit(element)) {
+                kind = Kind.INT32;
+            }
+        }
+        return kind;
+    }
+
+    private static boolean fitsBit(double value) {
+        return value == 1 || value == 0 && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO;
+    }
+
+    private static boolean fitsInt(double value) {
+        return value == (int) value && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO;
+    }
+
+    private static int wordCount(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    private static double[] toDoubles(List<NumberValue> elements) {
+        double[] values = new double[elements.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = elements.get(i).getValue();
+        }
+        return values;
+    }
+
+    public double[] toDoubleArray() {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = getDouble(i);
+        }
+        return values;
+    }
+
     public List<NumberValue> getElements() {
+        List<NumberValue> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(get(i));
+        }
         return Collections.unmodifiableList(elements);
     }
 
@@ -54,9 +310,13 @@ public final class ArrayValue implements Value {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < elements.size(); i++) {
+        for (int i = 0; i < size; i++) {
             if (i > 0) sb.append(", ");
-            sb.append(elements.get(i));
+            if (kind == Kind.DOUBLE || kind == Kind.MAPPED) {
+                sb.append(NumberValue.format(getDouble(i)));
+            } else {
+                sb.append((int) getDouble(i));
+            }
         }
         sb.append("]");
         return sb.toString();
@@ -67,11 +327,22 @@ public final class ArrayValue implements Value {
         if (this == obj) return true;
         if (!(obj instanceof ArrayValue)) return false;
         ArrayValue other = (ArrayValue) obj;
-        return elements.equals(other.elements);
+        if (size != other.size) return false;
+        if (kind == Kind.DOUBLE && other.kind == Kind.DOUBLE) {
+            return Arrays.equals(doubles, other.doubles);
+        }
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(getDouble(i), other.getDouble(i)) != 0) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return elements.hashCode();
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + Double.hashCode(getDouble(i));
+        }
+        return hash;
     }
 }
\ No newline at end of file
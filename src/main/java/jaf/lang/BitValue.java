@@ -1,12 +1,19 @@
 package jaf.lang;
 
 public final class BitValue implements Value {
+
+    public static final BitValue TRUE = new BitValue(true);
+    public static final BitValue FALSE = new BitValue(false);
     
     private final boolean value;
     
-    public BitValue(boolean value) {
+    private BitValue(boolean value) {
         this.value = value;
     }
+
+    public static BitValue valueOf(boolean value) {
+        return value ? TRUE : FALSE;
+    }
     
     public boolean getValue() {
         return value;
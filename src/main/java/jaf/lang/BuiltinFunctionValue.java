@@ -1,7 +1,13 @@
 package jaf.lang;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 public final class BuiltinFunctionValue implements Value {
     
+    private static final Set<String> NAMES = new HashSet<>(Arrays.asList("length", "print", "mmap", "save"));
+    
     private final String name;
     
     public BuiltinFunctionValue(String name) {
@@ -12,6 +18,10 @@ public final class BuiltinFunctionValue implements Value {
         return name;
     }
     
+    public static boolean isBuiltin(String name) {
+        return NAMES.contains(name);
+    }
+    
     @Override
     public String getType() {
         return "builtin";
@@ -1,19 +1,31 @@
 package jaf.lang;
 
+import jaf.semantics.Environment;
 import jaf.syntax.FunctionDefinition;
 
+/**
+ * A function together with the environment it was defined in. Calls run the
+ * body in a frame whose parent is that environment, so free names in the
+ * body are looked up lexically rather than in the caller.
+ */
 public final class FunctionValue implements Value {
     
     private final FunctionDefinition definition;
+    private final Environment closure;
     
-    public FunctionValue(FunctionDefinition definition) {
+    public FunctionValue(FunctionDefinition definition, Environment closure) {
         this.definition = definition;
+        this.closure = closure;
     }
     
     public FunctionDefinition getDefinition() {
         return definition;
     }
     
+    public Environment getClosure() {
+        return closure;
+    }
+    
     @Override
     public String getType() {
         return "function";
@@ -29,7 +41,7 @@ public final class FunctionValue implements Value {
         if (this == obj) return true;
         if (!(obj instanceof FunctionValue)) return false;
         FunctionValue other = (FunctionValue) obj;
-        return definition.equals(other.definition);
+        return definition.equals(other.definition) && closure == other.closure;
     }
     
     @Override
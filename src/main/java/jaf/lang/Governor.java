@@ -0,0 +1,197 @@
+package jaf.lang;
+
+/**
+ * Enforces {@link Limits} on one execution of a script, and lets another
+ * thread cancel it.
+ *
+ * Engines call {@link #tick} at every loop back-edge and function call. The
+ * hot path only counts down a batch of fuel; once a batch is burnt the
+ * governor polls: it checks for cancellation and the deadline and hands out
+ * the next batch, or fails when the fuel is gone. A cancelled or overdue
+ * execution therefore stops within {@link #POLL_INTERVAL} ticks. The JIT's
+ * compiled code has no such safepoints, so the interpreter only uses it for
+ * executions nobody supervises, which run on {@link #unsupervised} governors.
+ *
+ * Arrays and strings are charged as they are created. Those the engines
+ * create are charged to the engine's governor; those created by the shared
+ * operations, which hold no execution state, to the governor of the
+ * execution running on the current thread.
+ *
+ * A governor belongs to a single execution and is not reusable.
+ */
+public final class Governor {
+
+    public static final int POLL_INTERVAL = 1 << 10;
+
+    private static final ThreadLocal<Governor> CURRENT = new ThreadLocal<>();
+
+    private final Limits limits;
+    private final boolean supervised;
+    private long deadline;
+    private long fuel;
+    private int batch;
+    private int iterations;
+    private long memory;
+    private volatile boolean cancelled;
+
+    public Governor(Limits limits) {
+        this(limits, true);
+    }
+
+    private Governor(Limits limits, boolean supervised) {
+        this.limits = limits;
+        this.supervised = supervised;
+        this.fuel = limits.getFuel();
+    }
+
+    /**
+     * Returns a governor for an execution no other code can reach, which
+     * therefore only ends early when it runs out of a limit.
+     */
+    public static Governor unsupervised(Limits limits) {
+        return new Governor(limits, false);
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Returns whether the execution may be stopped from outside or by a
+     * limit that is only checked at safepoints.
+     */
+    public boolean isSupervised() {
+        return supervised || limits.getFuel() != Limits.UNLIMITED || limits.getTimeoutMillis() != Limits.UNLIMITED;
+    }
+
+    /**
+     * Asks the execution to stop at its next poll. Safe to call from any
+     * thread, before or during the execution.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getFuelUsed() {
+        return limits.getFuel() - fuel - batch;
+    }
+
+    public long getMemoryUsed() {
+        return memory;
+    }
+
+    /**
+     * Starts the clock and makes this the governor of the current thread.
+     * Returns the governor to restore when the execution ends.
+     */
+    public Governor enter() {
+        if (deadline == 0 && limits.getTimeoutMillis() != Limits.UNLIMITED) {
+            deadline = System.nanoTime() + limits.getTimeoutMillis() * 1_000_000L;
+        }
+        Governor previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    public void exit(Governor previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Returns the governor of the execution running on the current thread,
+     * or null.
+     */
+    public static Governor current() {
+        return CURRENT.get();
+    }
+
+    public void tick() {
+        if (batch == 0) {
+            poll();
+        }
+        batch--;
+    }
+
+    private void poll() {
+        if (cancelled) {
+            throw new JafLimitException("Execution cancelled");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new JafLimitException(
+                    String.format("Time limit exceeded (%d ms)", limits.getTimeoutMillis())
+            );
+        }
+        if (fuel == 0) {
+            throw new JafLimitException(
+                    String.format("Fuel exhausted (%d)", limits.getFuel())
+            );
+        }
+        batch = (int) Math.min(POLL_INTERVAL, fuel);
+        fuel -= batch;
+    }
+
+    /**
+     * Starts counting the iterations of a loop afresh and returns the count
+     * of the loop it is nested in, which {@link #exitLoop} restores.
+     */
+    public int enterLoop() {
+        int outer = iterations;
+        iterations = 0;
+        return outer;
+    }
+
+    public void exitLoop(int outer) {
+        iterations = outer;
+    }
+
+    /**
+     * Counts one iteration of the innermost running loop.
+     */
+    public void iterate() {
+        if (iterations >= limits.getMaxLoopIterations()) {
+            throw new JafLimitException(
+                    String.format("Iteration limit exceeded (%d). Possible infinite loop", limits.getMaxLoopIterations())
+            );
+        }
+        iterations++;
+        tick();
+    }
+
+    public ArrayValue allocate(ArrayValue array) {
+        if (array.size() > limits.getMaxArrayLength()) {
+            throw new JafLimitException(
+                    String.format("Array length limit exceeded (%d elements, at most %d)",
+                            array.size(), limits.getMaxArrayLength())
+            );
+        }
+        if (array.getKind() != ArrayValue.Kind.MAPPED) {
+            charge((long) array.size() * Double.BYTES);
+        }
+        return array;
+    }
+
+    /**
+     * Charges the characters a concatenation added. Strings built by
+     * appending share their characters, so only the new ones count.
+     */
+    public void allocateCharacters(int count) {
+        charge((long) count * Character.BYTES);
+    }
+
+    private void charge(long bytes) {
+        memory += bytes;
+        if (memory > limits.getMemoryQuota()) {
+            throw new JafLimitException(
+                    String.format("Memory quota exceeded (%d bytes)", limits.getMemoryQuota())
+            );
+        }
+    }
+}
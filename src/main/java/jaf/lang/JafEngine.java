@@ -0,0 +1,102 @@
+package jaf.lang;
+
+import jaf.syntax.Lexer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Entry point for embedding Jaf in a Java application.
+ *
+ * An engine holds nothing but its choice of execution engine and the
+ * {@link Limits} every execution is held to, so one instance can be reused
+ * for any number of scripts and shared between threads. Compile a script
+ * once with {@link #compile} and run the resulting {@link Program} as often
+ * as needed to skip lexing, parsing and resolution on every call.
+ */
+public final class JafEngine {
+
+    private final Program.Engine engine;
+    private final Limits limits;
+
+    public JafEngine() {
+        this(Program.Engine.AST);
+    }
+
+    public JafEngine(Program.Engine engine) {
+        this(engine, Limits.DEFAULT);
+    }
+
+    public JafEngine(Program.Engine engine, Limits limits) {
+        this.engine = engine;
+        this.limits = limits;
+    }
+
+    public Program.Engine getEngine() {
+        return engine;
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    public Program compile(String source) throws JafException {
+        return Program.compile(source);
+    }
+
+    public Program compile(Reader source) throws JafException {
+        return Program.compile(source);
+    }
+
+    public Program compile(Lexer source) throws JafException {
+        return Program.compile(source);
+    }
+
+    public Program load(Path file) throws IOException, JafException {
+        return Program.load(file);
+    }
+
+    public Program compile(String source, ForkJoinPool pool) throws JafException {
+        return Program.compile(source, pool);
+    }
+
+    public Program load(Path file, ForkJoinPool pool) throws IOException, JafException {
+        return Program.load(file, pool);
+    }
+
+    public Value eval(String source) throws JafException {
+        return execute(compile(source));
+    }
+
+    public Value eval(String source, Map<String, Value> bindings) throws JafException {
+        return execute(compile(source), bindings);
+    }
+
+    public Value execute(Program program) {
+        return program.execute(engine, Governor.unsupervised(limits));
+    }
+
+    public Value execute(Program program, Map<String, Value> bindings) {
+        return program.execute(engine, bindings, Governor.unsupervised(limits));
+    }
+
+    /**
+     * Runs the program with the given variables, writing what it prints to
+     * {@code output} instead of standard output.
+     */
+    public Value execute(Program program, Map<String, Value> bindings, PrintWriter output) {
+        return program.execute(engine, bindings, Governor.unsupervised(limits), output);
+    }
+
+    /**
+     * Runs the program under a governor of the caller's, which can cancel
+     * it from another thread. The governor's limits replace the engine's.
+     */
+    public Value execute(Program program, Map<String, Value> bindings, Governor governor) {
+        return program.execute(engine, bindings, governor);
+    }
+}
@@ -0,0 +1,12 @@
+package jaf.lang;
+
+/**
+ * Thrown when an execution exceeds one of its {@link Limits} or is
+ * cancelled through its {@link Governor}.
+ */
+public class JafLimitException extends JafRuntimeException {
+    
+    public JafLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,105 @@
+package jaf.lang;
+
+/**
+ * The resources one execution of a script may use, enforced by a
+ * {@link Governor}. Limits are immutable; each {@code with} method returns a
+ * copy with one limit changed, so a configuration can be shared by every
+ * execution of every tenant's scripts.
+ *
+ * <ul>
+ * <li>Loop iterations: how often one loop may repeat, counted afresh each
+ * time the loop is entered. An inner loop keeps its own count, so it does
+ * not reset the count of the loop around it. This is the safeguard scripts
+ * always had.</li>
+ * <li>Fuel: units the whole execution may burn, one per loop iteration and
+ * one per function call.</li>
+ * <li>Timeout: wall-clock milliseconds from the start of the execution.</li>
+ * <li>Array length: the most elements one array may have.</li>
+ * <li>Memory: bytes of arrays and strings the execution may create in
+ * total, counting 8 bytes per array element and 2 per character. Arrays
+ * mapped from files live outside the heap and are only held to the array
+ * length limit.</li>
+ * </ul>
+ */
+public final class Limits implements Immutable {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    public static final Limits DEFAULT = new Limits(1_000_000, UNLIMITED, UNLIMITED, Integer.MAX_VALUE, UNLIMITED);
+
+    private final int maxLoopIterations;
+    private final long fuel;
+    private final long timeoutMillis;
+    private final int maxArrayLength;
+    private final long memoryQuota;
+
+    private Limits(int maxLoopIterations, long fuel, long timeoutMillis, int maxArrayLength, long memoryQuota) {
+        this.maxLoopIterations = maxLoopIterations;
+        this.fuel = fuel;
+        this.timeoutMillis = timeoutMillis;
+        this.maxArrayLength = maxArrayLength;
+        this.memoryQuota = memoryQuota;
+    }
+
+    public int getMaxLoopIterations() {
+        return maxLoopIterations;
+    }
+
+    public long getFuel() {
+        return fuel;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public int getMaxArrayLength() {
+        return maxArrayLength;
+    }
+
+    public long getMemoryQuota() {
+        return memoryQuota;
+    }
+
+    public Limits withMaxLoopIterations(int maxLoopIterations) {
+        return new Limits(requirePositive(maxLoopIterations, "Loop iteration limit"),
+                fuel, timeoutMillis, maxArrayLength, memoryQuota);
+    }
+
+    public Limits withFuel(long fuel) {
+        return new Limits(maxLoopIterations, requirePositive(fuel, "Fuel"),
+                timeoutMillis, maxArrayLength, memoryQuota);
+    }
+
+    public Limits withTimeoutMillis(long timeoutMillis) {
+        return new Limits(maxLoopIterations, fuel, requirePositive(timeoutMillis, "Timeout"),
+                maxArrayLength, memoryQuota);
+    }
+
+    public Limits withMaxArrayLength(int maxArrayLength) {
+        return new Limits(maxLoopIterations, fuel, timeoutMillis,
+                requirePositive(maxArrayLength, "Array length limit"), memoryQuota);
+    }
+
+    public Limits withMemoryQuota(long memoryQuota) {
+        return new Limits(maxLoopIterations, fuel, timeoutMillis, maxArrayLength,
+                requirePositive(memoryQuota, "Memory quota"));
+    }
+
+    private static int requirePositive(int value, String name) {
+        return (int) requirePositive((long) value, name);
+    }
+
+    private static long requirePositive(long value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "Limits{loopIterations=" + maxLoopIterations + ", fuel=" + fuel + ", timeoutMillis=" + timeoutMillis
+                + ", arrayLength=" + maxArrayLength + ", memory=" + memoryQuota + "}";
+    }
+}
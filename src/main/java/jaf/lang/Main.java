@@ -1,11 +1,11 @@
 package jaf.lang;
 
-import jaf.syntax.*;
-import jaf.semantics.*;
+import jaf.syntax.Lexer;
+
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
     public static void main(String[] args) {
@@ -16,23 +16,37 @@ public class Main {
 
         String command = args[0];
 
+        String engine = "ast";
+        boolean parallel = false;
+        int first = 1;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].startsWith("--engine=")) {
+                engine = args[first].substring("--engine=".length());
+            } else if (args[first].equals("--parallel")) {
+                parallel = true;
+            } else {
+                break;
+            }
+            first++;
+        }
+
         switch (command) {
             case "run":
-                if (args.length < 2) {
+                if (args.length <= first) {
                     System.err.println("Error: specify file to run");
                     printUsage();
                     return;
                 }
-                runFile(args[1]);
+                runFile(args[first], engine, parallel);
                 break;
 
             case "eval":
-                if (args.length < 2) {
+                if (args.length <= first) {
                     System.err.println("Error: specify expression to evaluate");
                     printUsage();
                     return;
                 }
-                evalExpression(String.join(" ", java.util.Arrays.copyOfRange(args, 1, args.length)));
+                evalExpression(String.join(" ", java.util.Arrays.copyOfRange(args, first, args.length)), engine);
                 break;
 
             case "help":
@@ -41,7 +55,7 @@ public class Main {
 
             default:
                 if (command.endsWith(".jaf")) {
-                    runFile(command);
+                    runFile(command, engine, parallel);
                 } else {
                     System.err.println("Unknown command: " + command);
                     printUsage();
@@ -49,13 +63,17 @@ public class Main {
         }
     }
 
-    private static void runFile(String filename) {
-        try {
-            String source = new String(Files.readAllBytes(Paths.get(filename)));
+    private static void runFile(String filename, String engine, boolean parallel) {
+        Path file = Paths.get(filename);
+        // Unless parsed in parallel, the file is mapped and lexed as the
+        // parser goes, never read whole.
+        try (Lexer lexer = parallel ? null : Lexer.map(file)) {
             System.out.println("Running file: " + filename);
             System.out.println("==================================");
 
-            executeProgram(source);
+            Program.Engine selected = selectEngine(engine);
+            JafEngine jaf = new JafEngine(selected);
+            executeProgram(jaf, parallel ? jaf.load(file, ForkJoinPool.commonPool()) : jaf.compile(lexer));
 
         } catch (IOException e) {
             System.err.println("File read error: " + e.getMessage());
@@ -65,38 +83,41 @@ public class Main {
         }
     }
 
-    private static void evalExpression(String expression) {
+    private static void evalExpression(String expression, String engine) {
         try {
             System.out.println("Evaluating: " + expression);
             System.out.println("==================================");
 
-            executeProgram(expression);
+            JafEngine jaf = new JafEngine(selectEngine(engine));
+            executeProgram(jaf, jaf.compile(expression));
 
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
         }
     }
 
-    private static void executeProgram(String source) throws Exception {
-        Lexer lexer = new Lexer(source);
-        List<Token> tokens = lexer.scanTokens();
-
-        TokenStream stream = new TokenStream(tokens);
-        Parser parser = new Parser(stream);
-        List<Expression> expressions = parser.parseProgram();
+    private static Program.Engine selectEngine(String engine) throws JafException {
+        try {
+            return Program.Engine.valueOf(engine.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new JafException("Unknown engine: " + engine + " (expected ast, vm or closure)");
+        }
+    }
 
-        Interpreter interpreter = new Interpreter();
-        Value result = interpreter.executeProgram(expressions);
+    private static void executeProgram(JafEngine jaf, Program program) {
+        Value result = jaf.execute(program);
 
         System.out.println("\nResult: " + result);
     }
 
     private static void printUsage() {
         System.out.println("Usage:");
-        System.out.println("  java -jar jaf.jar run <file.jaf>  - run Jaf file");
-        System.out.println("  java -jar jaf.jar eval <code>     - evaluate expression");
-        System.out.println("  java -jar jaf.jar help            - show help");
-        System.out.println("  java -jar jaf.jar <file.jaf>      - run file (short form)");
+        System.out.println("  java -jar jaf.jar run [--engine=ENGINE] <file.jaf>  - run Jaf file");
+        System.out.println("  java -jar jaf.jar eval [--engine=ENGINE] <code>     - evaluate expression");
+        System.out.println("  java -jar jaf.jar help                              - show help");
+        System.out.println("  java -jar jaf.jar <file.jaf>                        - run file (short form)");
+        System.out.println("  ENGINE is ast (default), vm or closure");
+        System.out.println("  --parallel lexes and parses a large file on all cores");
     }
 
     private static void printHelp() {
@@ -111,8 +132,9 @@ public class Main {
         System.out.println("  Conditionals: if (condition) expression [else expression]");
         System.out.println("  Loops:        while (condition) expression");
         System.out.println("  Blocks:       { expression1; expression2; ... }");
-        System.out.println("  Functions:    func name(parameter) body");
+        System.out.println("  Functions:    func name(param1, param2, ...) body");
         System.out.println("  Arrays:       arr = [1, 2, 3], arr[0], arr[0] = 42, length(arr)");
+        System.out.println("  Files:        arr = mmap(\"data.bin\"), save(arr, \"data.bin\")");
         System.out.println("\nExample .jaf files are in examples/");
     }
 }
\ No newline at end of file
@@ -2,12 +2,41 @@ package jaf.lang;
 
 public final class NumberValue implements Value {
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final NumberValue[] CACHE = new NumberValue[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new NumberValue(i + CACHE_LOW);
+        }
+    }
+
     private final double value;
 
     public NumberValue(double value) {
         this.value = value;
     }
 
+    /**
+     * Returns a number value, reusing a shared instance for small integers.
+     */
+    public static NumberValue valueOf(double value) {
+        int index = (int) value;
+        if (index == value && index >= CACHE_LOW && index <= CACHE_HIGH
+                && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0)) {
+            return CACHE[index - CACHE_LOW];
+        }
+        return new NumberValue(value);
+    }
+
+    public static String format(double value) {
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
     public double getValue() {
         return value;
     }
@@ -23,10 +52,7 @@ public final class NumberValue implements Value {
 
     @Override
     public String toString() {
-        if (value == (long) value) {
-            return Long.toString((long) value);
-        }
-        return Double.toString(value);
+        return format(value);
     }
 
     @Override
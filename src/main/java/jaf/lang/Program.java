@@ -0,0 +1,189 @@
+package jaf.lang;
+
+import jaf.exec.ClosureCompiler;
+import jaf.exec.Context;
+import jaf.jit.CodeCache;
+import jaf.optimize.Inlining;
+import jaf.optimize.Optimizer;
+import jaf.semantics.FrameEnvironment;
+import jaf.semantics.Interpreter;
+import jaf.semantics.MapEnvironment;
+import jaf.semantics.Resolver;
+import jaf.syntax.Expression;
+import jaf.syntax.Lexer;
+import jaf.syntax.ParallelParser;
+import jaf.syntax.Parser;
+import jaf.syntax.Scope;
+import jaf.syntax.TokenStream;
+import jaf.vm.BytecodeCompiler;
+import jaf.vm.Chunk;
+import jaf.vm.VirtualMachine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A parsed, optimized and resolved script, ready to run any number of times.
+ *
+ * A program holds no execution state: every call to {@link #execute} runs in
+ * a fresh global frame with its own interpreter, so one instance can be
+ * shared by many threads running the script concurrently. What executions
+ * do share is read-only or safe to publish: the resolved syntax tree, the
+ * bytecode of the top level and the code the JIT compiles for hot functions.
+ * The closure engine rewrites its nodes while running, so each of its
+ * executions compiles a tree of its own.
+ *
+ * Every execution runs under a {@link Governor}. Pass one to limit the
+ * resources a script may use or to cancel it from another thread; without
+ * one, only the default loop iteration limit applies.
+ */
+public final class Program implements Immutable {
+
+    public enum Engine { AST, VM, CLOSURE }
+
+    private final List<Expression> expressions;
+    private final Scope globals;
+    private final CodeCache codeCache = new CodeCache();
+    private volatile Chunk chunk;
+
+    public Program(List<Expression> parsed) {
+        this(parsed, Optimizer.standard());
+    }
+
+    public Program(List<Expression> parsed, Optimizer optimizer) {
+        Resolver resolver = new Resolver();
+        List<Expression> optimized = optimizer.optimize(parsed);
+        this.expressions = Collections.unmodifiableList(new ArrayList<>(resolver.resolve(optimized)));
+        this.globals = resolver.getGlobals();
+    }
+
+    public static Program compile(String source) throws JafException {
+        return compile(new Lexer(source));
+    }
+
+    public static Program compile(Reader source) throws JafException {
+        return compile(new Lexer(source));
+    }
+
+    /**
+     * Compiles a UTF-8 source file, reading it through memory mappings so
+     * neither the file's text nor its tokens are ever held as a whole.
+     */
+    public static Program load(Path file) throws IOException, JafException {
+        try (Lexer lexer = Lexer.map(file)) {
+            return compile(lexer);
+        }
+    }
+
+    public static Program compile(Lexer lexer) throws JafException {
+        Parser parser = new Parser(new TokenStream(lexer));
+        return new Program(parser.parseProgram());
+    }
+
+    /**
+     * Compiles a script, lexing and parsing chunks of it in parallel on
+     * {@code pool}. Worth it for large generated scripts; small ones are
+     * parsed sequentially anyway.
+     */
+    public static Program compile(String source, ForkJoinPool pool) throws JafException {
+        return new Program(new ParallelParser(source, pool).parseProgram());
+    }
+
+    /**
+     * Compiles a UTF-8 source file in parallel. Unlike {@link #load(Path)},
+     * this reads the whole file into memory, since the chunks are cut from
+     * its text.
+     */
+    public static Program load(Path file, ForkJoinPool pool) throws IOException, JafException {
+        return compile(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), pool);
+    }
+
+    public List<Expression> getExpressions() {
+        return expressions;
+    }
+
+    public Scope getGlobals() {
+        return globals;
+    }
+
+    public Value execute() {
+        return execute(Engine.AST);
+    }
+
+    public Value execute(Engine engine) {
+        return execute(engine, Governor.unsupervised(Limits.DEFAULT));
+    }
+
+    public Value execute(Engine engine, Governor governor) {
+        return run(engine, new FrameEnvironment(globals), governor, new PrintWriter(System.out, true));
+    }
+
+    /**
+     * Runs the program with the given variables visible to it. Reads of a
+     * name the script has not assigned yet fall through to the bindings;
+     * once the program completes, the final value of every top-level
+     * variable it assigned is stored back into the map. The temporaries of
+     * inlined calls are left out.
+     */
+    public Value execute(Engine engine, Map<String, Value> bindings) {
+        return execute(engine, bindings, Governor.unsupervised(Limits.DEFAULT));
+    }
+
+    public Value execute(Engine engine, Map<String, Value> bindings, Governor governor) {
+        return execute(engine, bindings, governor, new PrintWriter(System.out, true));
+    }
+
+    /**
+     * Runs the program with the given variables, writing what it prints to
+     * {@code output} instead of standard output.
+     */
+    public Value execute(Engine engine, Map<String, Value> bindings, Governor governor, PrintWriter output) {
+        FrameEnvironment frame = new FrameEnvironment(globals, new MapEnvironment(bindings));
+        Value result = run(engine, frame, governor, output);
+        for (int slot = 0; slot < globals.size(); slot++) {
+            Symbol name = globals.getSymbol(slot);
+            if (frame.containsLocal(name) && !Inlining.isTemporary(name.getName())) {
+                bindings.put(name.getName(), frame.get(name));
+            }
+        }
+        return result;
+    }
+
+    private Value run(Engine engine, FrameEnvironment frame, Governor governor, PrintWriter output) {
+        Governor previous = governor.enter();
+        try {
+            if (engine == Engine.VM) {
+                return new VirtualMachine(governor, output).execute(getChunk(), frame);
+            }
+            // The tree-walking engines nest a Java call per Jaf call; only the
+            // VM keeps its frames on the heap.
+            if (engine == Engine.CLOSURE) {
+                return ClosureCompiler.compile(expressions).execute(new Context(governor, output), frame);
+            }
+            return new Interpreter(frame, codeCache, governor, output).executeProgram(expressions);
+        } catch (StackOverflowError e) {
+            throw new JafRuntimeException(
+                    "Call depth limit exceeded. Possible infinite recursion (the vm engine supports deeper recursion)");
+        } finally {
+            governor.exit(previous);
+        }
+    }
+
+    private Chunk getChunk() {
+        Chunk result = chunk;
+        if (result == null) {
+            result = BytecodeCompiler.compile(expressions, globals);
+            chunk = result;
+        }
+        return result;
+    }
+}
@@ -1,15 +1,106 @@
 package jaf.lang;
 
+/**
+ * A string. Strings built by concatenation are views of a shared, append-only
+ * character buffer: appending to the string that ends where the buffer ends
+ * writes the new characters in place, so a loop that keeps appending to the
+ * same variable copies each character about once instead of once per
+ * iteration. Any other concatenation starts a buffer of its own. Slices are
+ * views of the same characters and copy nothing.
+ *
+ * A view is flattened into a {@link String} only when that is needed, as by
+ * {@link #getValue} or {@link #toString} for printing; comparison and hashing
+ * read the characters directly.
+ */
 public final class StringValue implements Value {
 
-    private final String value;
+    private final Buffer buffer;
+    private final char[] chars;
+    private final int offset;
+    private final int length;
+    private String value;
+    private int hash;
 
     public StringValue(String value) {
+        this.buffer = null;
+        this.chars = null;
+        this.offset = 0;
+        this.length = value.length();
         this.value = value;
     }
 
+    private StringValue(Buffer buffer, char[] chars, int offset, int length) {
+        this.buffer = buffer;
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the concatenation of two values, at least one of which is
+     * usually a string; other values contribute their printed form.
+     */
+    public static StringValue concat(Value left, Value right) {
+        StringValue prefix = left instanceof StringValue ? (StringValue) left : new StringValue(left.toString());
+        StringValue suffix = right instanceof StringValue ? (StringValue) right : new StringValue(right.toString());
+        return prefix.append(suffix);
+    }
+
+    private StringValue append(StringValue suffix) {
+        if (suffix.length == 0) {
+            return this;
+        }
+        if (buffer != null) {
+            char[] appended = buffer.append(offset + length, suffix);
+            if (appended != null) {
+                return new StringValue(buffer, appended, offset, length + suffix.length);
+            }
+        }
+        char[] copy = new char[length + suffix.length];
+        getChars(copy, 0);
+        suffix.getChars(copy, length);
+        return new StringValue(new Buffer(copy), copy, 0, copy.length);
+    }
+
+    /**
+     * Returns the characters from {@code begin} up to {@code end}, sharing
+     * this string's storage.
+     */
+    public StringValue slice(int begin, int end) {
+        if (begin < 0 || end > length || begin > end) {
+            throw new JafRuntimeException(
+                    String.format("Slice [%d, %d) out of bounds for string of length %d", begin, end, length)
+            );
+        }
+        if (chars == null) {
+            return new StringValue(value.substring(begin, end));
+        }
+        return new StringValue(buffer, chars, offset + begin, end - begin);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        return chars != null ? chars[offset + index] : value.charAt(index);
+    }
+
+    private void getChars(char[] destination, int position) {
+        if (chars != null) {
+            System.arraycopy(chars, offset, destination, position, length);
+        } else {
+            value.getChars(0, length, destination, position);
+        }
+    }
+
     public String getValue() {
-        return value;
+        String result = value;
+        if (result == null) {
+            result = new String(chars, offset, length);
+            value = result;
+        }
+        return result;
     }
 
     @Override
@@ -19,7 +110,7 @@ public final class StringValue implements Value {
 
     @Override
     public String toString() {
-        return value;
+        return getValue();
     }
 
     @Override
@@ -27,11 +118,71 @@ public final class StringValue implements Value {
         if (this == obj) return true;
         if (!(obj instanceof StringValue)) return false;
         StringValue other = (StringValue) obj;
-        return value.equals(other.value);
+        if (length != other.length) return false;
+        if (value != null && other.value != null) {
+            return value.equals(other.value);
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Hashes the characters the way {@link String#hashCode} does, whether or
+     * not the string has been flattened.
+     */
     @Override
     public int hashCode() {
-        return value.hashCode();
+        int result = hash;
+        if (result == 0 && length > 0) {
+            for (int i = 0; i < length; i++) {
+                result = 31 * result + charAt(i);
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    /**
+     * Characters shared by the strings built from one another. Positions
+     * below {@code size} are never written again, so views of them stay
+     * valid; a full buffer grows into a new array and the views keep the
+     * old one.
+     */
+    private static final class Buffer {
+
+        private char[] chars;
+        private int size;
+
+        Buffer(char[] chars) {
+            this.chars = chars;
+            this.size = chars.length;
+        }
+
+        /**
+         * Appends the suffix if the buffer still ends at {@code end}, and
+         * returns the array now holding the characters, or null when some
+         * other string has been appended there first.
+         */
+        synchronized char[] append(int end, StringValue suffix) {
+            if (end != size) {
+                return null;
+            }
+            int needed = size + suffix.length;
+            if (needed < 0) {
+                throw new JafRuntimeException("String too long");
+            }
+            if (needed > chars.length) {
+                char[] grown = new char[Math.max(needed, (int) Math.min(Integer.MAX_VALUE - 8, 2L * chars.length))];
+                System.arraycopy(chars, 0, grown, 0, size);
+                chars = grown;
+            }
+            suffix.getChars(chars, size);
+            size = needed;
+            return chars;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package jaf.lang;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interned name. There is at most one symbol per name at a time, so
+ * symbols compare by identity and hash by a small integer id, and the lexer,
+ * the syntax tree and the environments all pass the same instance around
+ * instead of hashing and comparing strings. Whether the name is a builtin is
+ * decided once, when the symbol is created.
+ *
+ * The table only holds symbols weakly: names a long-running host no longer
+ * uses, such as the temporaries of optimized programs it has dropped, are
+ * collected, and a later {@link #of} creates a fresh symbol.
+ */
+public final class Symbol implements Immutable {
+
+    private static final Map<String, WeakReference<Symbol>> TABLE = new WeakHashMap<>();
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private final String name;
+    private final int id;
+    private final boolean builtin;
+
+    private Symbol(String name) {
+        this.name = name;
+        this.id = IDS.getAndIncrement();
+        this.builtin = BuiltinFunctionValue.isBuiltin(name);
+    }
+
+    public static Symbol of(String name) {
+        synchronized (TABLE) {
+            WeakReference<Symbol> reference = TABLE.get(name);
+            Symbol symbol = reference != null ? reference.get() : null;
+            if (symbol == null) {
+                symbol = new Symbol(name);
+                // The key must be the symbol's own name, which lives exactly
+                // as long as the symbol, not a stale entry's equal key.
+                TABLE.remove(name);
+                TABLE.put(symbol.name, new WeakReference<>(symbol));
+            }
+            return symbol;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isBuiltin() {
+        return builtin;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,167 @@
+package jaf.optimize;
+
+import jaf.lang.AstVisitor;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts how often names are bound by assignments, function definitions
+ * and parameters.
+ */
+final class Bindings implements AstVisitor<Void> {
+
+    private final Map<String, Integer> counts = new HashMap<>();
+    private final boolean functionBodies;
+
+    private Bindings(boolean functionBodies) {
+        this.functionBodies = functionBodies;
+    }
+
+    /**
+     * Counts the bindings of every name anywhere in the program, including
+     * the parameters and locals of all functions. A name bound once is
+     * bound by the one assignment or definition the caller is looking at.
+     */
+    static Map<String, Integer> count(List<Expression> program) {
+        Bindings bindings = new Bindings(true);
+        for (Expression expr : program) {
+            expr.accept(bindings);
+        }
+        return bindings.counts;
+    }
+
+    /**
+     * Returns the names an expression binds in the frame it runs in, which
+     * leaves out everything inside the functions it defines.
+     */
+    static Set<String> of(Expression expr) {
+        Bindings bindings = new Bindings(false);
+        expr.accept(bindings);
+        return bindings.counts.keySet();
+    }
+
+    private void add(String name) {
+        Integer previous = counts.get(name);
+        counts.put(name, previous == null ? 1 : previous + 1);
+    }
+
+    @Override
+    public Void visit(StringLiteral node) {
+        return null;
+    }
+
+    @Override
+    public Void visit(NumberLiteral node) {
+        return null;
+    }
+
+    @Override
+    public Void visit(IntLiteral node) {
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOp node) {
+        node.getLeft().accept(this);
+        node.getRight().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(Variable node) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Assignment node) {
+        node.getValue().accept(this);
+        add(node.getVariableName());
+        return null;
+    }
+
+    @Override
+    public Void visit(Block node) {
+        for (Expression expr : node.getExpressions()) {
+            expr.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(IfExpression node) {
+        node.getCondition().accept(this);
+        node.getThenBranch().accept(this);
+        if (node.hasElseBranch()) {
+            node.getElseBranch().accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(WhileExpression node) {
+        node.getCondition().accept(this);
+        node.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionDefinition node) {
+        add(node.getFunctionName());
+        if (functionBodies) {
+            for (String parameterName : node.getParameterNames()) {
+                add(parameterName);
+            }
+            node.getBody().accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionCall node) {
+        for (Expression argument : node.getArguments()) {
+            argument.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayLiteral node) {
+        for (Expression element : node.getElements()) {
+            element.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAccess node) {
+        node.getArray().accept(this);
+        node.getIndex().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAssignment node) {
+        node.getArray().accept(this);
+        node.getIndex().accept(this);
+        node.getValue().accept(this);
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package jaf.optimize;
+
+import jaf.lang.Value;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Expression;
+
+/**
+ * Replaces operators whose operands are all literals with the literal of
+ * their result, including the {@code 0 - x} the parser builds for a negated
+ * number.
+ */
+public final class ConstantFolding extends Rewriter {
+
+    @Override
+    public String getName() {
+        return "constant-folding";
+    }
+
+    @Override
+    public Expression visit(BinaryOp node) {
+        Expression rewritten = super.visit(node);
+        if (!(rewritten instanceof BinaryOp)) {
+            return rewritten;
+        }
+
+        BinaryOp op = (BinaryOp) rewritten;
+        if (!Constants.isLiteral(op.getLeft()) || !Constants.isLiteral(op.getRight())) {
+            return op;
+        }
+        Value value = Constants.evaluate(op);
+        Expression literal = value != null ? Constants.literal(value) : null;
+        return literal != null ? literal : op;
+    }
+}
@@ -0,0 +1,72 @@
+package jaf.optimize;
+
+import jaf.lang.JafRuntimeException;
+import jaf.lang.NumberValue;
+import jaf.lang.StringValue;
+import jaf.lang.Value;
+import jaf.semantics.Operations;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Expression;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.StringLiteral;
+
+/**
+ * Compile-time evaluation shared by the passes. Constant expressions are
+ * evaluated with the same {@link Operations} the engines use, so a folded
+ * result is exactly what the program would have computed.
+ */
+final class Constants {
+
+    private Constants() {
+    }
+
+    static boolean isLiteral(Expression expr) {
+        return expr instanceof NumberLiteral || expr instanceof IntLiteral || expr instanceof StringLiteral;
+    }
+
+    /**
+     * Returns the value of an expression built only from literals and
+     * operators, or null when it is not constant or evaluating it fails.
+     * A failing expression is left for the engine to report at run time.
+     */
+    static Value evaluate(Expression expr) {
+        if (expr instanceof NumberLiteral) {
+            return ((NumberLiteral) expr).getConstant();
+        }
+        if (expr instanceof IntLiteral) {
+            return ((IntLiteral) expr).getConstant();
+        }
+        if (expr instanceof StringLiteral) {
+            return ((StringLiteral) expr).getConstant();
+        }
+        if (expr instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) expr;
+            Value left = evaluate(op.getLeft());
+            Value right = left != null ? evaluate(op.getRight()) : null;
+            if (right == null) {
+                return null;
+            }
+            try {
+                return Operations.binary(op.getOperator(), left, right);
+            } catch (JafRuntimeException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the literal that evaluates to the given value, or null when
+     * no literal does. Comparisons produce bits, which have no literal.
+     */
+    static Expression literal(Value value) {
+        if (value instanceof NumberValue) {
+            return new NumberLiteral(((NumberValue) value).getValue());
+        }
+        if (value instanceof StringValue) {
+            return new StringLiteral(((StringValue) value).getValue());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package jaf.optimize;
+
+import jaf.lang.JafRuntimeException;
+import jaf.lang.Value;
+import jaf.semantics.Operations;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+
+import java.util.Collections;
+
+/**
+ * Removes the branch of an {@code if} that a constant condition never takes
+ * and drops {@code while} loops whose constant condition is false. A removed
+ * construct that would have yielded void becomes an empty block.
+ */
+public final class DeadBranchElimination extends Rewriter {
+
+    @Override
+    public String getName() {
+        return "dead-branch-elimination";
+    }
+
+    @Override
+    public Expression visit(IfExpression node) {
+        Expression rewritten = super.visit(node);
+        if (!(rewritten instanceof IfExpression)) {
+            return rewritten;
+        }
+
+        IfExpression expr = (IfExpression) rewritten;
+        Boolean condition = constantCondition(expr.getCondition(), "if condition");
+        if (condition == null) {
+            return expr;
+        }
+        if (condition) {
+            return expr.getThenBranch();
+        }
+        return expr.hasElseBranch() ? expr.getElseBranch() : empty();
+    }
+
+    @Override
+    public Expression visit(WhileExpression node) {
+        Expression rewritten = super.visit(node);
+        if (!(rewritten instanceof WhileExpression)) {
+            return rewritten;
+        }
+
+        WhileExpression expr = (WhileExpression) rewritten;
+        Boolean condition = constantCondition(expr.getCondition(), "while condition");
+        if (condition != null && !condition) {
+            return empty();
+        }
+        return expr;
+    }
+
+    private static Boolean constantCondition(Expression condition, String operation) {
+        Value value = Constants.evaluate(condition);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Operations.toBoolean(value, operation);
+        } catch (JafRuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Block empty() {
+        return new Block(Collections.<Expression>emptyList());
+    }
+}
@@ -0,0 +1,319 @@
+package jaf.optimize;
+
+import jaf.lang.AstVisitor;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces calls of small functions with their bodies.
+ *
+ * A function is inlined when its body has at most {@link #MAX_SIZE} nodes
+ * and touches nothing but its parameters: it defines no functions, calls
+ * only builtins and assigns only its parameters. Such a body cannot recurse
+ * and means the same wherever it is placed. At a call site each parameter
+ * becomes a fresh temporary variable assigned the argument, or the argument
+ * itself when that is a literal the body never reassigns. Temporaries are
+ * named with a {@code $}, which no identifier can contain.
+ *
+ * A call is only inlined where the name certainly holds the definition:
+ * after it in the same sequence, unless the statement containing the call
+ * rebinds the name, and inside later function bodies only when the
+ * definition is the name's one binding in the whole program. Any other call,
+ * such as one of a redefined function inside a loop, stays an ordinary call.
+ */
+public final class Inlining extends Rewriter {
+
+    public static final int MAX_SIZE = 32;
+
+    private static final char TEMPORARY = '$';
+
+    private Map<String, Integer> bindings;
+    private Map<String, FunctionDefinition> known;
+    private int temporaries;
+
+    @Override
+    public String getName() {
+        return "inlining";
+    }
+
+    public static boolean isTemporary(String name) {
+        return name.indexOf(TEMPORARY) >= 0;
+    }
+
+    @Override
+    public List<Expression> apply(List<Expression> program) {
+        bindings = Bindings.count(program);
+        known = new HashMap<>();
+        try {
+            return inlineAll(program);
+        } finally {
+            bindings = null;
+            known = null;
+        }
+    }
+
+    @Override
+    public Expression visit(Block node) {
+        List<Expression> original = node.getExpressions();
+        List<Expression> expressions = inlineAll(original);
+        if (expressions == original) {
+            return node;
+        }
+        return new Block(expressions);
+    }
+
+    @Override
+    public Expression visit(FunctionDefinition node) {
+        Map<String, FunctionDefinition> enclosing = known;
+        known = new HashMap<>();
+        for (Map.Entry<String, FunctionDefinition> entry : enclosing.entrySet()) {
+            if (bindings.get(entry.getKey()) == 1) {
+                known.put(entry.getKey(), entry.getValue());
+            }
+        }
+        try {
+            return super.visit(node);
+        } finally {
+            known = enclosing;
+        }
+    }
+
+    @Override
+    public Expression visit(FunctionCall node) {
+        Expression rewritten = super.visit(node);
+        FunctionCall call = (FunctionCall) rewritten;
+        FunctionDefinition definition = known.get(call.getFunctionName());
+        if (call.isBuiltin() || definition == null || definition.getArity() != call.getArgumentCount()) {
+            return call;
+        }
+        return inline(definition, call.getArguments());
+    }
+
+    private List<Expression> inlineAll(List<Expression> expressions) {
+        Map<String, FunctionDefinition> enclosing = known;
+        known = new HashMap<>(enclosing);
+        try {
+            List<Expression> rewritten = null;
+            for (int i = 0; i < expressions.size(); i++) {
+                Expression expr = expressions.get(i);
+                known.keySet().removeAll(Bindings.of(expr));
+
+                Expression result = expr.accept(this);
+                if (result != expr && rewritten == null) {
+                    rewritten = new ArrayList<>(expressions.subList(0, i));
+                }
+                if (rewritten != null) {
+                    rewritten.add(result);
+                }
+
+                if (result instanceof FunctionDefinition && Candidate.accepts((FunctionDefinition) result)) {
+                    known.put(((FunctionDefinition) result).getFunctionName(), (FunctionDefinition) result);
+                }
+            }
+            return rewritten == null ? expressions : rewritten;
+        } finally {
+            known = enclosing;
+        }
+    }
+
+    private Expression inline(FunctionDefinition definition, List<Expression> arguments) {
+        Set<String> assigned = Bindings.of(definition.getBody());
+        Map<String, Expression> reads = new HashMap<>();
+        Map<String, String> writes = new HashMap<>();
+        List<Expression> expressions = new ArrayList<>();
+
+        for (int i = 0; i < arguments.size(); i++) {
+            String parameterName = definition.getParameterName(i);
+            Expression argument = arguments.get(i);
+            if (Constants.isLiteral(argument) && !assigned.contains(parameterName)) {
+                reads.put(parameterName, argument);
+            } else {
+                String temporary = temporary(definition.getFunctionName(), parameterName);
+                reads.put(parameterName, new Variable(temporary));
+                writes.put(parameterName, temporary);
+                expressions.add(new Assignment(temporary, argument));
+            }
+        }
+        // Temporaries of calls inlined into the body get fresh names too,
+        // so two copies of the body never share a variable.
+        for (String name : assigned) {
+            if (isTemporary(name)) {
+                String temporary = temporary(definition.getFunctionName(), name);
+                reads.put(name, new Variable(temporary));
+                writes.put(name, temporary);
+            }
+        }
+
+        Expression body = definition.getBody().accept(new Renaming(reads, writes));
+        if (body instanceof Block && !((Block) body).getExpressions().isEmpty()) {
+            expressions.addAll(((Block) body).getExpressions());
+        } else {
+            expressions.add(body);
+        }
+        return expressions.size() == 1 ? expressions.get(0) : new Block(expressions);
+    }
+
+    private String temporary(String functionName, String name) {
+        String prefix = isTemporary(name)
+                ? name.substring(0, name.lastIndexOf(TEMPORARY))
+                : functionName + TEMPORARY + name;
+        return prefix + TEMPORARY + (++temporaries);
+    }
+
+    private static final class Renaming extends Rewriter {
+
+        private final Map<String, Expression> reads;
+        private final Map<String, String> writes;
+
+        Renaming(Map<String, Expression> reads, Map<String, String> writes) {
+            this.reads = reads;
+            this.writes = writes;
+        }
+
+        @Override
+        public String getName() {
+            return "renaming";
+        }
+
+        @Override
+        public Expression visit(Variable node) {
+            Expression replacement = reads.get(node.getName());
+            return replacement != null ? replacement : node;
+        }
+
+        @Override
+        public Expression visit(Assignment node) {
+            String name = writes.get(node.getVariableName());
+            Expression value = node.getValue().accept(this);
+            return new Assignment(name != null ? name : node.getVariableName(), value);
+        }
+    }
+
+    /**
+     * Decides whether a body is small and self-contained enough to inline.
+     */
+    private static final class Candidate implements AstVisitor<Boolean> {
+
+        private final Set<String> parameters;
+        private int size;
+
+        private Candidate(Set<String> parameters) {
+            this.parameters = parameters;
+        }
+
+        static boolean accepts(FunctionDefinition definition) {
+            Candidate candidate = new Candidate(new HashSet<>(definition.getParameterNames()));
+            return definition.getBody().accept(candidate) && candidate.size <= MAX_SIZE;
+        }
+
+        private boolean count() {
+            return ++size <= MAX_SIZE;
+        }
+
+        private boolean isLocal(String name) {
+            return parameters.contains(name) || isTemporary(name);
+        }
+
+        private boolean acceptsAll(List<Expression> expressions) {
+            for (Expression expr : expressions) {
+                if (!expr.accept(this)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visit(StringLiteral node) {
+            return count();
+        }
+
+        @Override
+        public Boolean visit(NumberLiteral node) {
+            return count();
+        }
+
+        @Override
+        public Boolean visit(IntLiteral node) {
+            return count();
+        }
+
+        @Override
+        public Boolean visit(BinaryOp node) {
+            return count() && node.getLeft().accept(this) && node.getRight().accept(this);
+        }
+
+        @Override
+        public Boolean visit(Variable node) {
+            return count() && (isLocal(node.getName()) || BuiltinFunctionValue.isBuiltin(node.getName()));
+        }
+
+        @Override
+        public Boolean visit(Assignment node) {
+            return count() && isLocal(node.getVariableName()) && node.getValue().accept(this);
+        }
+
+        @Override
+        public Boolean visit(Block node) {
+            return count() && acceptsAll(node.getExpressions());
+        }
+
+        @Override
+        public Boolean visit(IfExpression node) {
+            return count() && node.getCondition().accept(this) && node.getThenBranch().accept(this)
+                    && (!node.hasElseBranch() || node.getElseBranch().accept(this));
+        }
+
+        @Override
+        public Boolean visit(WhileExpression node) {
+            return count() && node.getCondition().accept(this) && node.getBody().accept(this);
+        }
+
+        @Override
+        public Boolean visit(FunctionDefinition node) {
+            return false;
+        }
+
+        @Override
+        public Boolean visit(FunctionCall node) {
+            return count() && node.isBuiltin() && acceptsAll(node.getArguments());
+        }
+
+        @Override
+        public Boolean visit(ArrayLiteral node) {
+            return count() && acceptsAll(node.getElements());
+        }
+
+        @Override
+        public Boolean visit(ArrayAccess node) {
+            return count() && node.getArray().accept(this) && node.getIndex().accept(this);
+        }
+
+        @Override
+        public Boolean visit(ArrayAssignment node) {
+            return count() && node.getArray().accept(this) && node.getIndex().accept(this)
+                    && node.getValue().accept(this);
+        }
+    }
+}
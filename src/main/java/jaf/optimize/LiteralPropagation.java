@@ -0,0 +1,128 @@
+package jaf.optimize;
+
+import jaf.lang.BuiltinFunctionValue;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.Variable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces reads of a variable that the whole program assigns exactly once,
+ * to a literal, with that literal.
+ *
+ * Only reads that are certain to run after the assignment are replaced:
+ * those in the expressions following it in the same block (or top-level
+ * sequence), including the bodies of functions defined there. A name that
+ * is also a parameter, a function name or a builtin is never propagated, so
+ * every such read refers to the assigned variable. The assignment itself is
+ * kept, except for the temporaries of inlined calls.
+ */
+public final class LiteralPropagation extends Rewriter {
+
+    private Map<String, Integer> bindings;
+    private Map<String, Expression> known;
+
+    @Override
+    public String getName() {
+        return "literal-propagation";
+    }
+
+    @Override
+    public List<Expression> apply(List<Expression> program) {
+        bindings = Bindings.count(program);
+        known = new HashMap<>();
+        try {
+            return propagate(program);
+        } finally {
+            bindings = null;
+            known = null;
+        }
+    }
+
+    @Override
+    public Expression visit(Variable node) {
+        Expression literal = known.get(node.getName());
+        return literal != null ? literal : node;
+    }
+
+    @Override
+    public Expression visit(Block node) {
+        List<Expression> original = node.getExpressions();
+        List<Expression> expressions = removeTemporaries(propagate(original));
+        if (expressions == original) {
+            return node;
+        }
+        return expressions.size() == 1 ? expressions.get(0) : new Block(expressions);
+    }
+
+    /**
+     * Drops the propagated assignments of inlining temporaries that are not
+     * the block's value. Every read of a temporary follows its assignment
+     * in the same block, so once the literal is propagated nothing reads it.
+     */
+    private List<Expression> removeTemporaries(List<Expression> expressions) {
+        List<Expression> kept = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression expr = expressions.get(i);
+            boolean unused = i < expressions.size() - 1 && isPropagated(expr)
+                    && Inlining.isTemporary(((Assignment) expr).getVariableName());
+            if (unused && kept == null) {
+                kept = new ArrayList<>(expressions.subList(0, i));
+            }
+            if (!unused && kept != null) {
+                kept.add(expr);
+            }
+        }
+        return kept == null ? expressions : kept;
+    }
+
+    /**
+     * Rewrites a sequence, making each single literal assignment known to
+     * the expressions after it. What a sequence learns is forgotten when it
+     * ends, since an enclosing branch or loop may not have run it.
+     */
+    private List<Expression> propagate(List<Expression> expressions) {
+        Map<String, Expression> enclosing = known;
+        known = new HashMap<>(enclosing);
+        try {
+            List<Expression> rewritten = null;
+            for (int i = 0; i < expressions.size(); i++) {
+                Expression expr = expressions.get(i);
+                Expression result = expr.accept(this);
+                if (result != expr && rewritten == null) {
+                    rewritten = new ArrayList<>(expressions.subList(0, i));
+                }
+                if (rewritten != null) {
+                    rewritten.add(result);
+                }
+                learn(result);
+            }
+            return rewritten == null ? expressions : rewritten;
+        } finally {
+            known = enclosing;
+        }
+    }
+
+    private void learn(Expression expr) {
+        if (isPropagated(expr)) {
+            Assignment assignment = (Assignment) expr;
+            known.put(assignment.getVariableName(), assignment.getValue());
+        }
+    }
+
+    private boolean isPropagated(Expression expr) {
+        if (!(expr instanceof Assignment)) {
+            return false;
+        }
+        Assignment assignment = (Assignment) expr;
+        String name = assignment.getVariableName();
+        Integer count = bindings.get(name);
+        return count != null && count == 1 && Constants.isLiteral(assignment.getValue())
+                && !BuiltinFunctionValue.isBuiltin(name);
+    }
+}
@@ -0,0 +1,241 @@
+package jaf.optimize;
+
+import jaf.lang.BuiltinFunctionValue;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hoists loop-invariant expressions out of {@code while} loops.
+ *
+ * An expression is invariant when it reads only variables the loop never
+ * assigns and computes with operators and {@code length}: functions cannot
+ * rebind the variables of the frame that calls them, and arrays never change
+ * their size. Each distinct invariant expression is computed once into a
+ * temporary and every copy of it in the loop reads the temporary instead.
+ *
+ * Only expressions the first iteration evaluates unconditionally are
+ * hoisted, and only from the part of the loop that runs before its first
+ * effect and before anything else that can fail, such as an array access,
+ * arithmetic on a variable or a call. So a hoisted expression can only fail
+ * where the loop would have failed anyway, unless the loop reads a variable
+ * no code has assigned. Expressions from the condition are computed before
+ * the loop. Expressions from the body need the loop to be entered, so the
+ * loop is guarded by its condition, which must be pure to be evaluated
+ * twice.
+ */
+public final class LoopInvariantCodeMotion extends Rewriter {
+
+    private int temporaries;
+
+    @Override
+    public String getName() {
+        return "loop-invariant-code-motion";
+    }
+
+    @Override
+    public Expression visit(WhileExpression node) {
+        Expression rewritten = super.visit(node);
+        if (!(rewritten instanceof WhileExpression)) {
+            return rewritten;
+        }
+
+        WhileExpression loop = (WhileExpression) rewritten;
+        if (!Purity.isPure(loop.getCondition())) {
+            return loop;
+        }
+
+        Invariants conditionInvariants = new Invariants(Bindings.of(loop));
+        conditionInvariants.collect(loop.getCondition());
+        Invariants bodyInvariants = new Invariants(Bindings.of(loop));
+        bodyInvariants.collect(loop.getBody());
+        bodyInvariants.found.keySet().removeAll(conditionInvariants.found.keySet());
+        if (conditionInvariants.found.isEmpty() && bodyInvariants.found.isEmpty()) {
+            return loop;
+        }
+
+        Map<String, String> names = new LinkedHashMap<>();
+        List<Expression> beforeLoop = hoist(conditionInvariants.found, names);
+        Expression guard = loop.getCondition().accept(new Substitution(names));
+        List<Expression> beforeBody = hoist(bodyInvariants.found, names);
+
+        Substitution substitution = new Substitution(names);
+        Expression hoisted = new WhileExpression(guard, loop.getBody().accept(substitution));
+        if (!beforeBody.isEmpty()) {
+            beforeBody.add(hoisted);
+            hoisted = new IfExpression(guard, new Block(beforeBody), null);
+        }
+        beforeLoop.add(hoisted);
+        return new Block(beforeLoop);
+    }
+
+    private List<Expression> hoist(Map<String, Expression> invariants, Map<String, String> names) {
+        List<Expression> assignments = new ArrayList<>();
+        for (Map.Entry<String, Expression> invariant : invariants.entrySet()) {
+            String temporary = "loop$" + (++temporaries);
+            names.put(invariant.getKey(), temporary);
+            assignments.add(new Assignment(temporary, invariant.getValue()));
+        }
+        return assignments;
+    }
+
+    private static String key(Expression expr) {
+        return expr.toString();
+    }
+
+    /**
+     * Collects the invariant expressions a loop evaluates unconditionally,
+     * in evaluation order, stopping at the first effect or expression that
+     * can fail.
+     */
+    private static final class Invariants {
+
+        private final Set<String> assigned;
+        private final Map<String, Expression> found = new LinkedHashMap<>();
+
+        Invariants(Set<String> assigned) {
+            this.assigned = assigned;
+        }
+
+        /**
+         * Returns false once an effect or an expression that can fail has
+         * been reached, after which nothing may be hoisted any more.
+         */
+        boolean collect(Expression expr) {
+            if (isInvariant(expr) && (expr instanceof BinaryOp || expr instanceof FunctionCall)) {
+                found.put(key(expr), expr);
+                return true;
+            }
+            if (expr instanceof BinaryOp) {
+                // Operators fail on operands of the wrong type, and division
+                // on zero.
+                if (collect(((BinaryOp) expr).getLeft())) {
+                    collect(((BinaryOp) expr).getRight());
+                }
+                return false;
+            }
+            if (expr instanceof Assignment) {
+                // The assigned value is lost if a hoisted expression fails,
+                // but so is everything else: the script stops.
+                return collect(((Assignment) expr).getValue());
+            }
+            if (expr instanceof Block) {
+                for (Expression child : ((Block) expr).getExpressions()) {
+                    if (!collect(child)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (expr instanceof IfExpression) {
+                // The branches run conditionally, and even pure ones can fail.
+                collect(((IfExpression) expr).getCondition());
+                return false;
+            }
+            if (expr instanceof WhileExpression) {
+                collect(((WhileExpression) expr).getCondition());
+                return false;
+            }
+            if (expr instanceof FunctionCall) {
+                for (Expression argument : ((FunctionCall) expr).getArguments()) {
+                    if (!collect(argument)) {
+                        return false;
+                    }
+                }
+                return false;
+            }
+            if (expr instanceof ArrayLiteral) {
+                for (Expression element : ((ArrayLiteral) expr).getElements()) {
+                    if (!collect(element)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (expr instanceof ArrayAccess) {
+                if (collect(((ArrayAccess) expr).getArray())) {
+                    collect(((ArrayAccess) expr).getIndex());
+                }
+                return false;
+            }
+            if (expr instanceof ArrayAssignment) {
+                ArrayAssignment store = (ArrayAssignment) expr;
+                if (collect(store.getArray()) && collect(store.getIndex())) {
+                    collect(store.getValue());
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private boolean isInvariant(Expression expr) {
+            if (Constants.isLiteral(expr)) {
+                return true;
+            }
+            if (expr instanceof Variable) {
+                String name = ((Variable) expr).getName();
+                return !assigned.contains(name) || BuiltinFunctionValue.isBuiltin(name);
+            }
+            if (expr instanceof BinaryOp) {
+                return isInvariant(((BinaryOp) expr).getLeft()) && isInvariant(((BinaryOp) expr).getRight());
+            }
+            if (expr instanceof FunctionCall) {
+                FunctionCall call = (FunctionCall) expr;
+                return call.isBuiltin() && call.getFunctionName().equals("length")
+                        && call.getArgumentCount() == 1 && isInvariant(call.getArguments().get(0));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Replaces hoisted expressions with reads of their temporaries. Bodies
+     * of functions defined in the loop run in frames of their own and are
+     * left alone.
+     */
+    private static final class Substitution extends Rewriter {
+
+        private final Map<String, String> names;
+
+        Substitution(Map<String, String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public String getName() {
+            return "substitution";
+        }
+
+        @Override
+        public Expression visit(BinaryOp node) {
+            String name = names.get(key(node));
+            return name != null ? new Variable(name) : super.visit(node);
+        }
+
+        @Override
+        public Expression visit(FunctionCall node) {
+            String name = names.get(key(node));
+            return name != null ? new Variable(name) : super.visit(node);
+        }
+
+        @Override
+        public Expression visit(FunctionDefinition node) {
+            return node;
+        }
+    }
+}
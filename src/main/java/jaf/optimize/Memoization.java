@@ -0,0 +1,355 @@
+package jaf.optimize;
+
+import jaf.lang.AstVisitor;
+import jaf.semantics.MemoCache;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marks pure, directly recursive functions of one parameter as memoized, so
+ * the engines cache their results and recursions like {@code fib} run in
+ * linear instead of exponential time. Only functions that may call
+ * themselves more than once per call are memoized: a linear recursion like
+ * {@code factorial} visits each argument once anyway, and left alone it
+ * keeps the VM's tail calls and the JIT. With {@code jaf.memo.capacity} set
+ * to zero nothing is memoized.
+ *
+ * A function is pure when its result depends on nothing but its arguments
+ * and calling it has no effect: its body reads only its own locals and other
+ * pure functions, calls only those and {@code length}, stores into no array
+ * and defines no functions. Its name and the names it calls must be bound
+ * once in the whole program, and its other locals nowhere outside it, so
+ * every name in the body means the same thing on every call. Pure functions
+ * that are not recursive are left alone, as a cache lookup would cost about
+ * as much as running them.
+ */
+public final class Memoization extends Rewriter {
+
+    private Set<String> memoized;
+
+    @Override
+    public String getName() {
+        return "memoization";
+    }
+
+    @Override
+    public List<Expression> apply(List<Expression> program) {
+        Map<String, Integer> bindings = Bindings.count(program);
+        Definitions definitions = new Definitions(bindings);
+        definitions.rewriteAll(program);
+
+        Set<String> pure = new HashSet<>(definitions.found.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<String> names = pure.iterator(); names.hasNext(); ) {
+                if (!Body.isPure(definitions.found.get(names.next()), pure, bindings)) {
+                    names.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        memoized = new HashSet<>();
+        for (String name : pure) {
+            FunctionDefinition definition = definitions.found.get(name);
+            if (MemoCache.CAPACITY > 0 && definition.getArity() == 1
+                    && Body.isRecursive(definition, pure, bindings)
+                    && definition.getBody().accept(new SelfCalls(name)) > 1) {
+                memoized.add(name);
+            }
+        }
+        try {
+            return rewriteAll(program);
+        } finally {
+            memoized = null;
+        }
+    }
+
+    @Override
+    public Expression visit(FunctionDefinition node) {
+        FunctionDefinition rewritten = (FunctionDefinition) super.visit(node);
+        boolean memoize = memoized.contains(rewritten.getFunctionName());
+        if (memoize == rewritten.isMemoized()) {
+            return rewritten;
+        }
+        return new FunctionDefinition(rewritten.getFunctionName(), rewritten.getParameterNames(),
+                rewritten.getBody(), -1, null, memoize);
+    }
+
+    /**
+     * Collects the definitions of names bound once, wherever they are.
+     */
+    private static final class Definitions extends Rewriter {
+
+        private final Map<String, Integer> bindings;
+        private final Map<String, FunctionDefinition> found = new HashMap<>();
+
+        Definitions(Map<String, Integer> bindings) {
+            this.bindings = bindings;
+        }
+
+        @Override
+        public String getName() {
+            return "definitions";
+        }
+
+        @Override
+        public Expression visit(FunctionDefinition node) {
+            if (bindings.get(node.getFunctionName()) == 1) {
+                found.put(node.getFunctionName(), node);
+            }
+            return super.visit(node);
+        }
+    }
+
+    /**
+     * Decides whether a function body is pure, given the set of functions
+     * currently believed pure, and notes whether it calls itself.
+     */
+    private static final class Body implements AstVisitor<Boolean> {
+
+        private final String self;
+        private final Set<String> locals = new HashSet<>();
+        private final Set<String> pure;
+        private boolean recursive;
+
+        private Body(String self, Set<String> pure) {
+            this.self = self;
+            this.pure = pure;
+        }
+
+        static boolean isPure(FunctionDefinition definition, Set<String> pure, Map<String, Integer> bindings) {
+            return analyze(definition, pure, bindings) != null;
+        }
+
+        static boolean isRecursive(FunctionDefinition definition, Set<String> pure, Map<String, Integer> bindings) {
+            Body body = analyze(definition, pure, bindings);
+            return body != null && body.recursive;
+        }
+
+        private static Body analyze(FunctionDefinition definition, Set<String> pure,
+                                    Map<String, Integer> bindings) {
+            Body body = new Body(definition.getFunctionName(), pure);
+            body.locals.addAll(definition.getParameterNames());
+
+            // A local read before the body assigns it falls back to the
+            // variable of that name around the function.
+            Map<String, Integer> own = Bindings.count(Collections.singletonList(definition.getBody()));
+            for (String local : Bindings.of(definition.getBody())) {
+                if (!body.locals.contains(local) && !bindings.get(local).equals(own.get(local))) {
+                    return null;
+                }
+                body.locals.add(local);
+            }
+            return definition.getBody().accept(body) ? body : null;
+        }
+
+        private boolean allPure(List<Expression> expressions) {
+            for (Expression expr : expressions) {
+                if (!expr.accept(this)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visit(StringLiteral node) {
+            return true;
+        }
+
+        @Override
+        public Boolean visit(NumberLiteral node) {
+            return true;
+        }
+
+        @Override
+        public Boolean visit(IntLiteral node) {
+            return true;
+        }
+
+        @Override
+        public Boolean visit(BinaryOp node) {
+            return node.getLeft().accept(this) && node.getRight().accept(this);
+        }
+
+        @Override
+        public Boolean visit(Variable node) {
+            return locals.contains(node.getName()) || pure.contains(node.getName());
+        }
+
+        @Override
+        public Boolean visit(Assignment node) {
+            return node.getValue().accept(this);
+        }
+
+        @Override
+        public Boolean visit(Block node) {
+            return allPure(node.getExpressions());
+        }
+
+        @Override
+        public Boolean visit(IfExpression node) {
+            return node.getCondition().accept(this) && node.getThenBranch().accept(this)
+                    && (!node.hasElseBranch() || node.getElseBranch().accept(this));
+        }
+
+        @Override
+        public Boolean visit(WhileExpression node) {
+            return node.getCondition().accept(this) && node.getBody().accept(this);
+        }
+
+        @Override
+        public Boolean visit(FunctionDefinition node) {
+            return false;
+        }
+
+        @Override
+        public Boolean visit(FunctionCall node) {
+            String name = node.getFunctionName();
+            if (node.isBuiltin() ? !name.equals("length") : !pure.contains(name)) {
+                return false;
+            }
+            if (name.equals(self)) {
+                recursive = true;
+            }
+            return allPure(node.getArguments());
+        }
+
+        @Override
+        public Boolean visit(ArrayLiteral node) {
+            return allPure(node.getElements());
+        }
+
+        @Override
+        public Boolean visit(ArrayAccess node) {
+            return node.getArray().accept(this) && node.getIndex().accept(this);
+        }
+
+        @Override
+        public Boolean visit(ArrayAssignment node) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the calls of a function one evaluation of its body can make to
+     * itself at most, where a call in a loop counts as many.
+     */
+    private static final class SelfCalls implements AstVisitor<Integer> {
+
+        private static final int MANY = 2;
+
+        private final String self;
+
+        SelfCalls(String self) {
+            this.self = self;
+        }
+
+        private int sum(List<Expression> expressions) {
+            int calls = 0;
+            for (Expression expr : expressions) {
+                calls += expr.accept(this);
+            }
+            return Math.min(calls, MANY);
+        }
+
+        @Override
+        public Integer visit(StringLiteral node) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(NumberLiteral node) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(IntLiteral node) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(BinaryOp node) {
+            return Math.min(node.getLeft().accept(this) + node.getRight().accept(this), MANY);
+        }
+
+        @Override
+        public Integer visit(Variable node) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(Assignment node) {
+            return node.getValue().accept(this);
+        }
+
+        @Override
+        public Integer visit(Block node) {
+            return sum(node.getExpressions());
+        }
+
+        @Override
+        public Integer visit(IfExpression node) {
+            int branch = node.getThenBranch().accept(this);
+            if (node.hasElseBranch()) {
+                branch = Math.max(branch, node.getElseBranch().accept(this));
+            }
+            return Math.min(node.getCondition().accept(this) + branch, MANY);
+        }
+
+        @Override
+        public Integer visit(WhileExpression node) {
+            return node.getCondition().accept(this) + node.getBody().accept(this) > 0 ? MANY : 0;
+        }
+
+        @Override
+        public Integer visit(FunctionDefinition node) {
+            return 0;
+        }
+
+        @Override
+        public Integer visit(FunctionCall node) {
+            int calls = node.getFunctionName().equals(self) ? 1 : 0;
+            return Math.min(calls + sum(node.getArguments()), MANY);
+        }
+
+        @Override
+        public Integer visit(ArrayLiteral node) {
+            return sum(node.getElements());
+        }
+
+        @Override
+        public Integer visit(ArrayAccess node) {
+            return Math.min(node.getArray().accept(this) + node.getIndex().accept(this), MANY);
+        }
+
+        @Override
+        public Integer visit(ArrayAssignment node) {
+            int calls = node.getArray().accept(this) + node.getIndex().accept(this) + node.getValue().accept(this);
+            return Math.min(calls, MANY);
+        }
+    }
+}
\ No newline at end of file
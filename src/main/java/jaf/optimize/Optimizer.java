@@ -0,0 +1,65 @@
+package jaf.optimize;
+
+import jaf.syntax.Expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a pipeline of {@link Pass}es over a parsed program before it is
+ * resolved, so every engine executes the optimized tree.
+ *
+ * One pass often enables another (an inlined body or a propagated literal
+ * makes an expression constant, which makes a branch dead), so the pipeline is repeated until a
+ * round changes nothing or {@link #MAX_ROUNDS} is reached. The standard
+ * pipeline can be switched off with the system property
+ * {@code jaf.optimize=false}.
+ */
+public final class Optimizer {
+
+    public static final int MAX_ROUNDS = 4;
+
+    private final List<Pass> passes;
+
+    public Optimizer(List<Pass> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    public static Optimizer standard() {
+        if (!Boolean.parseBoolean(System.getProperty("jaf.optimize", "true"))) {
+            return none();
+        }
+        return new Optimizer(Arrays.<Pass>asList(
+                new Inlining(),
+                new ConstantFolding(),
+                new DeadBranchElimination(),
+                new LiteralPropagation(),
+                new StrengthReduction(),
+                new LoopInvariantCodeMotion(),
+                new Memoization()
+        ));
+    }
+
+    public static Optimizer none() {
+        return new Optimizer(Collections.<Pass>emptyList());
+    }
+
+    public List<Pass> getPasses() {
+        return Collections.unmodifiableList(passes);
+    }
+
+    public List<Expression> optimize(List<Expression> program) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            List<Expression> before = program;
+            for (Pass pass : passes) {
+                program = pass.apply(program);
+            }
+            if (program == before) {
+                break;
+            }
+        }
+        return program;
+    }
+}
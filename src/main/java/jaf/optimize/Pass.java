@@ -0,0 +1,18 @@
+package jaf.optimize;
+
+import jaf.syntax.Expression;
+
+import java.util.List;
+
+/**
+ * One transformation of a parsed, not yet resolved program. A pass must
+ * preserve the program's behavior and should return the very same list and
+ * nodes for the parts it leaves unchanged, which is how the
+ * {@link Optimizer} notices that it has nothing left to do.
+ */
+public interface Pass {
+
+    String getName();
+
+    List<Expression> apply(List<Expression> program);
+}
@@ -0,0 +1,118 @@
+package jaf.optimize;
+
+import jaf.lang.AstVisitor;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.List;
+
+/**
+ * Decides whether evaluating an expression can have an effect besides
+ * producing its value or failing. Assignments, array stores, function
+ * definitions and calls of anything but {@code length} are effects; calls
+ * of user functions count as effects because they may print.
+ */
+final class Purity implements AstVisitor<Boolean> {
+
+    private static final Purity INSTANCE = new Purity();
+
+    private Purity() {
+    }
+
+    static boolean isPure(Expression expr) {
+        return expr.accept(INSTANCE);
+    }
+
+    private boolean allPure(List<Expression> expressions) {
+        for (Expression expr : expressions) {
+            if (!expr.accept(this)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean visit(StringLiteral node) {
+        return true;
+    }
+
+    @Override
+    public Boolean visit(NumberLiteral node) {
+        return true;
+    }
+
+    @Override
+    public Boolean visit(IntLiteral node) {
+        return true;
+    }
+
+    @Override
+    public Boolean visit(BinaryOp node) {
+        return node.getLeft().accept(this) && node.getRight().accept(this);
+    }
+
+    @Override
+    public Boolean visit(Variable node) {
+        return true;
+    }
+
+    @Override
+    public Boolean visit(Assignment node) {
+        return false;
+    }
+
+    @Override
+    public Boolean visit(Block node) {
+        return allPure(node.getExpressions());
+    }
+
+    @Override
+    public Boolean visit(IfExpression node) {
+        return node.getCondition().accept(this) && node.getThenBranch().accept(this)
+                && (!node.hasElseBranch() || node.getElseBranch().accept(this));
+    }
+
+    @Override
+    public Boolean visit(WhileExpression node) {
+        return node.getCondition().accept(this) && node.getBody().accept(this);
+    }
+
+    @Override
+    public Boolean visit(FunctionDefinition node) {
+        return false;
+    }
+
+    @Override
+    public Boolean visit(FunctionCall node) {
+        return node.isBuiltin() && node.getFunctionName().equals("length") && allPure(node.getArguments());
+    }
+
+    @Override
+    public Boolean visit(ArrayLiteral node) {
+        return allPure(node.getElements());
+    }
+
+    @Override
+    public Boolean visit(ArrayAccess node) {
+        return node.getArray().accept(this) && node.getIndex().accept(this);
+    }
+
+    @Override
+    public Boolean visit(ArrayAssignment node) {
+        return false;
+    }
+}
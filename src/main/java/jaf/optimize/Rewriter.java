@@ -0,0 +1,175 @@
+package jaf.optimize;
+
+import jaf.lang.AstVisitor;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pass that rebuilds the tree bottom-up. Every node is copied only when
+ * one of its children changed, so an unchanged subtree comes back as the
+ * same instance. Passes override the visits of the nodes they rewrite.
+ */
+public abstract class Rewriter implements Pass, AstVisitor<Expression> {
+
+    @Override
+    public List<Expression> apply(List<Expression> program) {
+        return rewriteAll(program);
+    }
+
+    @Override
+    public Expression visit(StringLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(NumberLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(IntLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(BinaryOp node) {
+        Expression left = node.getLeft().accept(this);
+        Expression right = node.getRight().accept(this);
+        if (left == node.getLeft() && right == node.getRight()) {
+            return node;
+        }
+        return new BinaryOp(node.getOperator(), left, right);
+    }
+
+    @Override
+    public Expression visit(Variable node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(Assignment node) {
+        Expression value = node.getValue().accept(this);
+        if (value == node.getValue()) {
+            return node;
+        }
+        return new Assignment(node.getVariable(), value);
+    }
+
+    @Override
+    public Expression visit(Block node) {
+        List<Expression> original = node.getExpressions();
+        List<Expression> expressions = rewriteAll(original);
+        if (expressions == original) {
+            return node;
+        }
+        return new Block(expressions);
+    }
+
+    @Override
+    public Expression visit(IfExpression node) {
+        Expression condition = node.getCondition().accept(this);
+        Expression thenBranch = node.getThenBranch().accept(this);
+        Expression elseBranch = node.hasElseBranch() ? node.getElseBranch().accept(this) : null;
+        if (condition == node.getCondition() && thenBranch == node.getThenBranch()
+                && elseBranch == node.getElseBranch()) {
+            return node;
+        }
+        return new IfExpression(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Expression visit(WhileExpression node) {
+        Expression condition = node.getCondition().accept(this);
+        Expression body = node.getBody().accept(this);
+        if (condition == node.getCondition() && body == node.getBody()) {
+            return node;
+        }
+        return new WhileExpression(condition, body);
+    }
+
+    @Override
+    public Expression visit(FunctionDefinition node) {
+        Expression body = node.getBody().accept(this);
+        if (body == node.getBody()) {
+            return node;
+        }
+        return new FunctionDefinition(node.getFunctionName(), node.getParameterNames(), body,
+                -1, null, node.isMemoized());
+    }
+
+    @Override
+    public Expression visit(FunctionCall node) {
+        List<Expression> original = node.getArguments();
+        List<Expression> arguments = rewriteAll(original);
+        if (arguments == original) {
+            return node;
+        }
+        return new FunctionCall(node.getFunction(), arguments);
+    }
+
+    @Override
+    public Expression visit(ArrayLiteral node) {
+        List<Expression> original = node.getElements();
+        List<Expression> elements = rewriteAll(original);
+        if (elements == original) {
+            return node;
+        }
+        return new ArrayLiteral(elements);
+    }
+
+    @Override
+    public Expression visit(ArrayAccess node) {
+        Expression array = node.getArray().accept(this);
+        Expression index = node.getIndex().accept(this);
+        if (array == node.getArray() && index == node.getIndex()) {
+            return node;
+        }
+        return new ArrayAccess(array, index);
+    }
+
+    @Override
+    public Expression visit(ArrayAssignment node) {
+        Expression array = node.getArray().accept(this);
+        Expression index = node.getIndex().accept(this);
+        Expression value = node.getValue().accept(this);
+        if (array == node.getArray() && index == node.getIndex() && value == node.getValue()) {
+            return node;
+        }
+        return new ArrayAssignment(array, index, value);
+    }
+
+    /**
+     * Rewrites every expression of a list, returning the list itself when
+     * none of them changed.
+     */
+    protected List<Expression> rewriteAll(List<Expression> expressions) {
+        List<Expression> rewritten = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression expr = expressions.get(i);
+            Expression result = expr.accept(this);
+            if (result != expr && rewritten == null) {
+                rewritten = new ArrayList<>(expressions.subList(0, i));
+            }
+            if (rewritten != null) {
+                rewritten.add(result);
+            }
+        }
+        return rewritten == null ? expressions : rewritten;
+    }
+}
@@ -0,0 +1,253 @@
+package jaf.optimize;
+
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces products of a loop's induction variable and a constant with a
+ * running sum, for loops like
+ *
+ * <pre>
+ * i = 0
+ * while (i &lt; n) { arr[i * 3] = arr[i * 3 + 1]; i = i + 1 }
+ * </pre>
+ *
+ * The induction variable must be assigned an integer literal right before
+ * the loop and be updated exactly once in the loop, by a top-level
+ * statement adding or subtracting an integer literal. For every positive
+ * integer factor the loop multiplies it by at least twice, a temporary
+ * starts at the product of the initial value and is advanced right after
+ * the update, so each product becomes a read. When the update ends the
+ * body, the temporaries are advanced right before it instead, so the loop
+ * still evaluates to the induction variable. A single product is left
+ * alone: in a tree-walking engine a multiplication costs no more than the
+ * addition that would replace it.
+ *
+ * Factors and steps are limited to {@link #MAX_FACTOR}, so the sums stay
+ * integers well below 2^53 and equal the products exactly.
+ */
+public final class StrengthReduction extends Rewriter {
+
+    public static final int MAX_FACTOR = 1 << 10;
+
+    private int temporaries;
+
+    @Override
+    public String getName() {
+        return "strength-reduction";
+    }
+
+    @Override
+    public List<Expression> apply(List<Expression> program) {
+        return reduceAll(rewriteAll(program));
+    }
+
+    @Override
+    public Expression visit(Block node) {
+        List<Expression> original = node.getExpressions();
+        List<Expression> expressions = reduceAll(rewriteAll(original));
+        if (expressions == original) {
+            return node;
+        }
+        return new Block(expressions);
+    }
+
+    private List<Expression> reduceAll(List<Expression> expressions) {
+        List<Expression> reduced = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression expr = expressions.get(i);
+            List<Expression> replacement = i > 0 ? reduce(expressions.get(i - 1), expr) : null;
+            if (replacement != null && reduced == null) {
+                reduced = new ArrayList<>(expressions.subList(0, i));
+            }
+            if (reduced != null) {
+                if (replacement != null) {
+                    reduced.addAll(replacement);
+                } else {
+                    reduced.add(expr);
+                }
+            }
+        }
+        return reduced == null ? expressions : reduced;
+    }
+
+    /**
+     * Returns the temporaries' initial assignments followed by the reduced
+     * loop, or null when the pair is not an initialized induction loop.
+     */
+    private List<Expression> reduce(Expression previous, Expression expr) {
+        if (!(previous instanceof Assignment) || !(expr instanceof WhileExpression)) {
+            return null;
+        }
+        Assignment initialization = (Assignment) previous;
+        WhileExpression loop = (WhileExpression) expr;
+        String variable = initialization.getVariableName();
+        Double start = integer(initialization.getValue(), Integer.MAX_VALUE);
+        if (start == null || !(loop.getBody() instanceof Block)) {
+            return null;
+        }
+
+        Integer count = Bindings.count(Collections.<Expression>singletonList(loop)).get(variable);
+        List<Expression> body = ((Block) loop.getBody()).getExpressions();
+        int update = -1;
+        Double step = null;
+        for (int i = 0; i < body.size() && step == null; i++) {
+            step = step(body.get(i), variable);
+            update = i;
+        }
+        if (count == null || count != 1 || step == null) {
+            return null;
+        }
+
+        Products products = new Products(variable, Collections.<Double, String>emptyMap());
+        loop.accept(products);
+        Map<Double, String> strides = new LinkedHashMap<>();
+        for (Map.Entry<Double, Integer> factor : products.counts.entrySet()) {
+            if (factor.getValue() >= 2) {
+                strides.put(factor.getKey(), "stride$" + (++temporaries));
+            }
+        }
+        if (strides.isEmpty()) {
+            return null;
+        }
+
+        List<Expression> result = new ArrayList<>();
+        Products substitution = new Products(variable, strides);
+        List<Expression> reducedBody = new ArrayList<>();
+        int advance = update < body.size() - 1 ? update + 1 : update;
+        for (int i = 0; i < body.size(); i++) {
+            if (i == advance) {
+                for (Map.Entry<Double, String> stride : strides.entrySet()) {
+                    Expression advanced = new BinaryOp(BinaryOp.Operator.ADD,
+                            new Variable(stride.getValue()), new NumberLiteral(step * stride.getKey()));
+                    reducedBody.add(new Assignment(stride.getValue(), advanced));
+                }
+            }
+            reducedBody.add(body.get(i).accept(substitution));
+        }
+        for (Map.Entry<Double, String> stride : strides.entrySet()) {
+            result.add(new Assignment(stride.getValue(), new NumberLiteral(start * stride.getKey())));
+        }
+        result.add(new WhileExpression(loop.getCondition().accept(substitution), new Block(reducedBody)));
+        return result;
+    }
+
+    /**
+     * Returns the step of a statement {@code v = v + c}, {@code v = c + v}
+     * or {@code v = v - c}, or null for any other statement.
+     */
+    private static Double step(Expression expr, String variable) {
+        if (!(expr instanceof Assignment) || !((Assignment) expr).getVariableName().equals(variable)
+                || !(((Assignment) expr).getValue() instanceof BinaryOp)) {
+            return null;
+        }
+        BinaryOp op = (BinaryOp) ((Assignment) expr).getValue();
+        if (op.getOperator() == BinaryOp.Operator.ADD) {
+            if (isVariable(op.getLeft(), variable)) {
+                return nonZero(integer(op.getRight(), MAX_FACTOR));
+            }
+            if (isVariable(op.getRight(), variable)) {
+                return nonZero(integer(op.getLeft(), MAX_FACTOR));
+            }
+        }
+        if (op.getOperator() == BinaryOp.Operator.SUBTRACT && isVariable(op.getLeft(), variable)) {
+            Double step = nonZero(integer(op.getRight(), MAX_FACTOR));
+            return step != null ? -step : null;
+        }
+        return null;
+    }
+
+    private static boolean isVariable(Expression expr, String name) {
+        return expr instanceof Variable && ((Variable) expr).getName().equals(name);
+    }
+
+    private static Double nonZero(Double value) {
+        return value != null && value != 0 ? value : null;
+    }
+
+    /**
+     * Returns the value of an integer literal no larger than the limit in
+     * magnitude, or null. Negative zero is not an integer here: its
+     * products would differ in sign from the sums replacing them.
+     */
+    private static Double integer(Expression expr, int limit) {
+        double value;
+        if (expr instanceof NumberLiteral) {
+            value = ((NumberLiteral) expr).getValue();
+        } else if (expr instanceof IntLiteral) {
+            value = ((IntLiteral) expr).getValue();
+        } else {
+            return null;
+        }
+        if (value != Math.rint(value) || Math.abs(value) > limit
+                || Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(-0.0)) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Counts the products of the induction variable and positive integer
+     * factors, and replaces those with a stride by reads of the stride's
+     * temporary.
+     */
+    private static final class Products extends Rewriter {
+
+        private final String variable;
+        private final Map<Double, String> strides;
+        private final Map<Double, Integer> counts = new LinkedHashMap<>();
+
+        Products(String variable, Map<Double, String> strides) {
+            this.variable = variable;
+            this.strides = strides;
+        }
+
+        @Override
+        public String getName() {
+            return "products";
+        }
+
+        @Override
+        public Expression visit(BinaryOp node) {
+            Double factor = factor(node);
+            if (factor == null) {
+                return super.visit(node);
+            }
+            Integer count = counts.get(factor);
+            counts.put(factor, count == null ? 1 : count + 1);
+            String stride = strides.get(factor);
+            return stride != null ? new Variable(stride) : node;
+        }
+
+        @Override
+        public Expression visit(FunctionDefinition node) {
+            return node;
+        }
+
+        private Double factor(BinaryOp node) {
+            if (node.getOperator() != BinaryOp.Operator.MULTIPLY) {
+                return null;
+            }
+            Double factor = null;
+            if (isVariable(node.getLeft(), variable)) {
+                factor = integer(node.getRight(), MAX_FACTOR);
+            } else if (isVariable(node.getRight(), variable)) {
+                factor = integer(node.getLeft(), MAX_FACTOR);
+            }
+            return factor != null && factor > 0 ? factor : null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package jaf.script;
+
+import jaf.lang.JafRuntimeException;
+import jaf.lang.Program;
+import jaf.lang.Value;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A script compiled by {@link JafScriptEngine}. It wraps a {@link Program},
+ * so evaluating it again only runs the script.
+ */
+public final class JafCompiledScript extends CompiledScript {
+
+    private final JafScriptEngine engine;
+    private final Program program;
+
+    JafCompiledScript(JafScriptEngine engine, Program program) {
+        this.engine = engine;
+        this.program = program;
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        Map<String, Value> variables = new HashMap<>();
+        collect(context.getBindings(ScriptContext.GLOBAL_SCOPE), variables);
+        collect(context.getBindings(ScriptContext.ENGINE_SCOPE), variables);
+        Map<String, Value> initial = new HashMap<>(variables);
+
+        Value result;
+        try {
+            result = engine.getEngine().execute(program, variables, output(context));
+        } catch (JafRuntimeException e) {
+            throw JafScriptEngine.scriptException(e);
+        }
+
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        for (Map.Entry<String, Value> entry : variables.entrySet()) {
+            if (entry.getValue() != initial.get(entry.getKey())) {
+                bindings.put(entry.getKey(), JafScriptEngine.toJava(entry.getValue()));
+            }
+        }
+        return JafScriptEngine.toJava(result);
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the context's writer, which the script prints to.
+     */
+    private static PrintWriter output(ScriptContext context) {
+        Writer writer = context.getWriter();
+        if (writer == null) {
+            return new PrintWriter(System.out, true);
+        }
+        return writer instanceof PrintWriter ? (PrintWriter) writer : new PrintWriter(writer, true);
+    }
+
+    private static void collect(Bindings bindings, Map<String, Value> variables) throws ScriptException {
+        if (bindings == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            Value value = JafScriptEngine.toValue(entry.getValue());
+            if (value == null) {
+                throw new ScriptException("Binding " + entry.getKey() + " has unsupported type "
+                        + entry.getValue().getClass().getName());
+            }
+            variables.put(entry.getKey(), value);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package jaf.script;
+
+import jaf.lang.ArrayValue;
+import jaf.lang.BitValue;
+import jaf.lang.IntValue;
+import jaf.lang.JafEngine;
+import jaf.lang.JafException;
+import jaf.lang.NumberValue;
+import jaf.lang.StringValue;
+import jaf.lang.Value;
+import jaf.lang.VoidValue;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.Reader;
+
+/**
+ * {@code javax.script} engine for Jaf. Scripts compiled with
+ * {@link #compile} can be evaluated any number of times against different
+ * bindings. Variables of the engine and global scopes are visible to the
+ * script; top-level variables the script assigns are stored back into the
+ * engine scope.
+ *
+ * Java values are converted at the boundary: numbers, strings, booleans and
+ * {@code double[]} become Jaf values on the way in, Jaf values are passed
+ * as they are, and a binding of any other Java type fails the evaluation.
+ * On the way out, numbers become {@code Double}, ints {@code Integer},
+ * strings {@code String}, bits {@code Boolean}, arrays {@code double[]}
+ * and void {@code null}. Arrays are copied in both directions, so changes
+ * the script makes to an array are only seen through the binding it is
+ * assigned to. Functions have no Java counterpart and pass through as Jaf
+ * values, which can be bound into later evaluations.
+ *
+ * What the script prints goes to the context's writer.
+ */
+public final class JafScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    private final JafScriptEngineFactory factory;
+    private final JafEngine engine;
+
+    JafScriptEngine(JafScriptEngineFactory factory, JafEngine engine) {
+        this.factory = factory;
+        this.engine = engine;
+    }
+
+    JafEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            return new JafCompiledScript(this, engine.compile(script));
+        } catch (JafException e) {
+            throw scriptException(e);
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        try {
+            return new JafCompiledScript(this, engine.compile(script));
+        } catch (JafException e) {
+            throw scriptException(e);
+        }
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    static ScriptException scriptException(Exception cause) {
+        ScriptException exception = new ScriptException(cause.getMessage());
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /**
+     * Converts a Java object to a Jaf value, or returns null when it has no
+     * Jaf counterpart.
+     */
+    static Value toValue(Object object) {
+        if (object == null) {
+            return VoidValue.INSTANCE;
+        }
+        if (object instanceof Value) {
+            return (Value) object;
+        }
+        if (object instanceof Boolean) {
+            return BitValue.valueOf((Boolean) object);
+        }
+        if (object instanceof Number) {
+            return NumberValue.valueOf(((Number) object).doubleValue());
+        }
+        if (object instanceof CharSequence || object instanceof Character) {
+            return new StringValue(object.toString());
+        }
+        if (object instanceof double[]) {
+            return new ArrayValue((double[]) object);
+        }
+        return null;
+    }
+
+    static Object toJava(Value value) {
+        if (value instanceof NumberValue) {
+            return ((NumberValue) value).getValue();
+        }
+        if (value instanceof IntValue) {
+            return ((IntValue) value).getValue();
+        }
+        if (value instanceof StringValue) {
+            return ((StringValue) value).getValue();
+        }
+        if (value instanceof BitValue) {
+            return ((BitValue) value).getValue();
+        }
+        if (value instanceof ArrayValue) {
+            return ((ArrayValue) value).toDoubleArray();
+        }
+        if (value instanceof VoidValue) {
+            return null;
+        }
+        return value;
+    }
+}
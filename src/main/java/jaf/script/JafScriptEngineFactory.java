@@ -0,0 +1,106 @@
+package jaf.script;
+
+import jaf.lang.JafEngine;
+import jaf.lang.Program;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registers Jaf with {@code javax.script}. The execution engine of new
+ * script engines is taken from the {@code jaf.engine} system property
+ * (ast, vm or closure) and defaults to ast. An unknown value is reported
+ * on standard error as well as thrown, because {@code ScriptEngineManager}
+ * swallows the exception and only returns null.
+ */
+public final class JafScriptEngineFactory implements ScriptEngineFactory {
+
+    private static final String NAME = "Jaf";
+    private static final String VERSION = "1.0.0";
+
+    @Override
+    public String getEngineName() {
+        return NAME;
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return Collections.singletonList("jaf");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return Collections.singletonList("application/x-jaf");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return Arrays.asList("jaf", "Jaf");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return NAME;
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return getEngineName();
+            case ScriptEngine.ENGINE_VERSION:
+                return getEngineVersion();
+            case ScriptEngine.NAME:
+                return getNames().get(0);
+            case ScriptEngine.LANGUAGE:
+                return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION:
+                return getLanguageVersion();
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return m + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print(\"" + toDisplay + "\")";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return String.join(";\n", statements);
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new JafScriptEngine(this, new JafEngine(selectEngine(System.getProperty("jaf.engine", "ast"))));
+    }
+
+    private static Program.Engine selectEngine(String engine) {
+        try {
+            return Program.Engine.valueOf(engine.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            String message = "Unknown jaf.engine: " + engine + " (expected ast, vm or closure)";
+            System.err.println(message);
+            throw new IllegalArgumentException(message, e);
+        }
+    }
+}
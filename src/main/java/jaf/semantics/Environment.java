@@ -3,18 +3,33 @@ package jaf.semantics;
 import jaf.lang.Value;
 import jaf.lang.Immutable;
 import jaf.lang.JafRuntimeException;
+import jaf.lang.Symbol;
+import jaf.syntax.Scope;
 
 public interface Environment extends Immutable {
     
-    Value get(String name) throws JafRuntimeException;
+    Value get(Symbol name) throws JafRuntimeException;
     
-    Environment put(String name, Value value);
+    Value get(int depth, int slot, Symbol name) throws JafRuntimeException;
     
-    boolean containsLocal(String name);
+    /**
+     * Like {@link #get(Symbol)}, but returns null for an undefined name.
+     */
+    Value find(Symbol name);
     
-    boolean contains(String name);
+    Value find(int depth, int slot, Symbol name);
+    
+    Environment put(Symbol name, Value value);
+    
+    Environment put(int depth, int slot, Symbol name, Value value);
+    
+    boolean containsLocal(Symbol name);
+    
+    boolean contains(Symbol name);
     
     Environment createChild();
     
+    Environment createChild(Scope scope);
+    
     Environment getParent();
-}
\ No newline at end of file
+}
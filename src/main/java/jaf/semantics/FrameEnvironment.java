@@ -0,0 +1,138 @@
+package jaf.semantics;
+
+import jaf.lang.Value;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.Symbol;
+import jaf.syntax.Scope;
+import java.util.Collections;
+
+public class FrameEnvironment implements Environment {
+
+    private static final Scope EMPTY = new Scope(Collections.<String>emptyList());
+
+    private final Scope scope;
+    private final Value[] slots;
+    private final Environment parent;
+
+    public FrameEnvironment(Scope scope) {
+        this(scope, null);
+    }
+
+    public FrameEnvironment(Scope scope, Environment parent) {
+        this.scope = scope;
+        this.slots = new Value[scope.size()];
+        this.parent = parent;
+    }
+
+    @Override
+    public Value get(Symbol name) throws JafRuntimeException {
+        int slot = scope.indexOf(name);
+        if (slot >= 0 && slots[slot] != null) {
+            return slots[slot];
+        }
+        if (parent != null) {
+            return parent.get(name);
+        }
+        throw new JafRuntimeException("Undefined variable: '" + name + "'");
+    }
+
+    @Override
+    public Value get(int depth, int slot, Symbol name) throws JafRuntimeException {
+        if (depth > 0) {
+            return parent.get(depth - 1, slot, name);
+        }
+        Value value = slots[slot];
+        if (value != null) {
+            return value;
+        }
+        if (parent != null) {
+            return parent.get(name);
+        }
+        throw new JafRuntimeException("Undefined variable: '" + name + "'");
+    }
+
+    @Override
+    public Value find(Symbol name) {
+        int slot = scope.indexOf(name);
+        if (slot >= 0 && slots[slot] != null) {
+            return slots[slot];
+        }
+        return parent != null ? parent.find(name) : null;
+    }
+
+    @Override
+    public Value find(int depth, int slot, Symbol name) {
+        if (depth > 0) {
+            return parent.find(depth - 1, slot, name);
+        }
+        Value value = slots[slot];
+        if (value != null) {
+            return value;
+        }
+        return parent != null ? parent.find(name) : null;
+    }
+
+    @Override
+    public Environment put(Symbol name, Value value) {
+        int slot = scope.indexOf(name);
+        if (slot < 0) {
+            throw new JafRuntimeException("Variable '" + name + "' has no slot in this frame");
+        }
+        slots[slot] = value;
+        return this;
+    }
+
+    @Override
+    public Environment put(int depth, int slot, Symbol name, Value value) {
+        if (depth > 0) {
+            parent.put(depth - 1, slot, name, value);
+        } else {
+            slots[slot] = value;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean containsLocal(Symbol name) {
+        int slot = scope.indexOf(name);
+        return slot >= 0 && slots[slot] != null;
+    }
+
+    @Override
+    public boolean contains(Symbol name) {
+        if (containsLocal(name)) {
+            return true;
+        }
+        return parent != null && parent.contains(name);
+    }
+
+    @Override
+    public Environment createChild() {
+        return new FrameEnvironment(EMPTY, this);
+    }
+
+    @Override
+    public Environment createChild(Scope scope) {
+        return new FrameEnvironment(scope, this);
+    }
+
+    @Override
+    public Environment getParent() {
+        return parent;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Environment{");
+        sb.append("variables=").append(scope.getNames());
+        if (parent != null) {
+            sb.append(", parent=").append(parent);
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
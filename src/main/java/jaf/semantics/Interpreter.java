@@ -2,14 +2,14 @@ package jaf.semantics;
 
 import jaf.lang.AstVisitor;
 import jaf.lang.Value;
-import jaf.lang.JafRuntimeException;
 import jaf.lang.NumberValue;
-import jaf.lang.StringValue;
-import jaf.lang.BitValue;
 import jaf.lang.BuiltinFunctionValue;
 import jaf.lang.VoidValue;
 import jaf.lang.FunctionValue;
 import jaf.lang.ArrayValue;
+import jaf.lang.Governor;
+import jaf.lang.Limits;
+import jaf.lang.Symbol;
 import jaf.syntax.StringLiteral;
 import jaf.syntax.NumberLiteral;
 import jaf.syntax.IntLiteral;
@@ -25,28 +25,52 @@ import jaf.syntax.FunctionCall;
 import jaf.syntax.ArrayLiteral;
 import jaf.syntax.ArrayAccess;
 import jaf.syntax.ArrayAssignment;
+import jaf.jit.CodeCache;
+import jaf.jit.JitProfile;
+import jaf.jit.NumericFunction;
 
-import java.util.HashMap;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.ArrayList;
 
 public class Interpreter implements AstVisitor<Value> {
 
-    private Environment environment;
+    private static final int MAX_POLYMORPHISM = 4;
 
-    private final Map<String, FunctionValue> functions;
+    private Environment environment;
 
-    private static final int MAX_ITERATIONS = 1_000_000;
-    private int iterationCount = 0;
+    private final Map<FunctionDefinition, Target> targets;
+    private Target[][] callSites = new Target[0][];
+    private final CodeCache codeCache;
+    private final Governor governor;
+    private final PrintWriter output;
+    private final boolean jit;
 
     public Interpreter() {
         this(new MapEnvironment());
     }
 
     public Interpreter(Environment environment) {
+        this(environment, new CodeCache());
+    }
+
+    public Interpreter(Environment environment, CodeCache codeCache) {
+        this(environment, codeCache, Governor.unsupervised(Limits.DEFAULT));
+    }
+
+    public Interpreter(Environment environment, CodeCache codeCache, Governor governor) {
+        this(environment, codeCache, governor, new PrintWriter(System.out, true));
+    }
+
+    public Interpreter(Environment environment, CodeCache codeCache, Governor governor, PrintWriter output) {
         this.environment = environment;
-        this.functions = new HashMap<>();
+        this.targets = new IdentityHashMap<>();
+        this.codeCache = codeCache;
+        this.governor = governor;
+        this.output = output;
+        this.jit = !governor.isSupervised();
     }
 
     public Environment getEnvironment() {
@@ -63,25 +87,21 @@ public class Interpreter implements AstVisitor<Value> {
         return lastValue;
     }
 
-    private void resetIterationCount() {
-        iterationCount = 0;
-    }
-
-    private void checkIterationLimit() {
-        if (iterationCount >= MAX_ITERATIONS) {
-            throw new JafRuntimeException(
-                    String.format("Iteration limit exceeded (%d). Possible infinite loop", MAX_ITERATIONS)
-            );
-        }
-        iterationCount++;
-    }
-
-    private Value executeFunction(FunctionValue function, Value argument) {
+    private Value executeFunction(FunctionValue function, Value[] arguments) {
         FunctionDefinition definition = function.getDefinition();
 
-        Environment functionEnv = environment.createChild();
-
-        functionEnv = functionEnv.put(definition.getParameterName(), argument);
+        Environment functionEnv;
+        if (definition.isResolved()) {
+            functionEnv = function.getClosure().createChild(definition.getScope());
+            for (int i = 0; i < arguments.length; i++) {
+                functionEnv.put(0, i, definition.getParameter(i), arguments[i]);
+            }
+        } else {
+            functionEnv = function.getClosure().createChild();
+            for (int i = 0; i < arguments.length; i++) {
+                functionEnv = functionEnv.put(definition.getParameter(i), arguments[i]);
+            }
+        }
 
         Environment oldEnv = this.environment;
 
@@ -95,77 +115,63 @@ public class Interpreter implements AstVisitor<Value> {
         }
     }
 
-    private FunctionValue getFunction(String name) {
-        FunctionValue function = functions.get(name);
-        if (function == null) {
-            throw new JafRuntimeException("Undefined function: '" + name + "'");
+    private Target getTarget(FunctionDefinition definition) {
+        Target target = targets.get(definition);
+        if (target == null) {
+            target = new Target(definition, jit ? codeCache : null);
+            targets.put(definition, target);
         }
-        return function;
+        return target;
     }
 
-    private Value builtinLength(Value argument) {
-        if (!(argument instanceof ArrayValue)) {
-            throw new JafRuntimeException("Function length expects array, got: " + argument.getType());
+    /**
+     * Looks the definition up in the inline cache of the call's site. The
+     * syntax tree is shared between executions, so the caches live here,
+     * indexed by the site number the resolver gave the call: the first
+     * {@link #MAX_POLYMORPHISM} definitions a site calls are found by a
+     * reference comparison, and a megamorphic site falls back to the map.
+     */
+    private Target getTarget(FunctionCall node, FunctionDefinition definition) {
+        int site = node.getSite();
+        if (site < 0) {
+            return getTarget(definition);
         }
-
-        ArrayValue array = (ArrayValue) argument;
-        return new NumberValue(array.size());
-    }
-
-    private double toNumber(Value value, String operation) {
-        if (value instanceof NumberValue) {
-            return ((NumberValue) value).getValue();
-        }
-        if (value instanceof BitValue) {
-            return ((BitValue) value).getValue() ? 1 : 0;
-        }
-        if (value instanceof VoidValue) {
-            throw new JafRuntimeException(
-                    String.format("Cannot use void in %s operation", operation)
-            );
+        if (site >= callSites.length) {
+            callSites = Arrays.copyOf(callSites, Math.max(site + 1, callSites.length * 2));
         }
-        if (value instanceof FunctionValue) {
-            throw new JafRuntimeException(
-                    String.format("Cannot use function in %s operation", operation)
-            );
-        }
-        if (value instanceof ArrayValue) {
-            throw new JafRuntimeException(
-                    String.format("Cannot use array in %s operation", operation)
-            );
+        Target[] cache = callSites[site];
+        if (cache != null) {
+            for (Target target : cache) {
+                if (target.definition == definition) {
+                    return target;
+                }
+            }
         }
-        throw new JafRuntimeException(
-                String.format("Unsupported type for arithmetic: %s", value.getType())
-        );
-    }
 
-    private boolean toBoolean(Value value, String operation) {
-        if (value instanceof BitValue) {
-            return ((BitValue) value).getValue();
-        }
-        if (value instanceof NumberValue) {
-            return ((NumberValue) value).getValue() != 0;
+        Target target = getTarget(definition);
+        if (cache == null) {
+            callSites[site] = new Target[] {target};
+        } else if (cache.length < MAX_POLYMORPHISM) {
+            Target[] extended = Arrays.copyOf(cache, cache.length + 1);
+            extended[cache.length] = target;
+            callSites[site] = extended;
         }
-
-        throw new JafRuntimeException(
-                String.format("Cannot use type %s in %s operation",
-                        value.getType(), operation)
-        );
+        return target;
     }
 
     @Override
     public Value visit(StringLiteral node) {
-        return new StringValue(node.getValue());
+        return node.getConstant();
     }
 
     @Override
     public Value visit(NumberLiteral node) {
-        return new NumberValue(node.getValue());
+        return node.getConstant();
     }
 
     @Override
     public Value visit(IntLiteral node) {
-        return new NumberValue(node.getValue());
+        return node.getConstant();
     }
 
     @Override
@@ -173,85 +179,19 @@ public class Interpreter implements AstVisitor<Value> {
         Value left = node.getLeft().accept(this);
         Value right = node.getRight().accept(this);
 
-        switch (node.getOperator()) {
-            case ADD:
-                if (left instanceof StringValue || right instanceof StringValue) {
-                    return new StringValue(left.toString() + right.toString());
-                }
-                return new NumberValue(toNumber(left, "addition") + toNumber(right, "addition"));
-            case SUBTRACT:
-                return new NumberValue(toNumber(left, "subtraction") - toNumber(right, "subtraction"));
-            case MULTIPLY:
-                return new NumberValue(toNumber(left, "multiplication") * toNumber(right, "multiplication"));
-            case DIVIDE:
-                double divisor = toNumber(right, "division");
-                if (divisor == 0) {
-                    throw new JafRuntimeException("Division by zero");
-                }
-                return new NumberValue(toNumber(left, "division") / divisor);
-            case EQUAL:
-                return equal(left, right);
-            case NOT_EQUAL:
-                BitValue eq = (BitValue) equal(left, right);
-                return new BitValue(!eq.getValue());
-            case LESS:
-                return new BitValue(toNumber(left, "comparison") < toNumber(right, "comparison"));
-            case LESS_EQUAL:
-                return new BitValue(toNumber(left, "comparison") <= toNumber(right, "comparison"));
-            case GREATER:
-                return new BitValue(toNumber(left, "comparison") > toNumber(right, "comparison"));
-            case GREATER_EQUAL:
-                return new BitValue(toNumber(left, "comparison") >= toNumber(right, "comparison"));
-            case AND:
-                return new BitValue(toBoolean(left, "logical AND") && toBoolean(right, "logical AND"));
-            case OR:
-                return new BitValue(toBoolean(left, "logical OR") || toBoolean(right, "logical OR"));
-            default:
-                throw new JafRuntimeException("Unknown operator: " + node.getOperator());
-        }
-    }
-
-    private BitValue equal(Value left, Value right) {
-        if (left instanceof StringValue && right instanceof StringValue) {
-            return new BitValue(((StringValue) left).getValue().equals(((StringValue) right).getValue()));
-        }
-        if (left instanceof NumberValue && right instanceof NumberValue) {
-            double leftNum = ((NumberValue) left).getValue();
-            double rightNum = ((NumberValue) right).getValue();
-            return new BitValue(leftNum == rightNum);
-        }
-        if (left instanceof BitValue && right instanceof BitValue) {
-            return new BitValue(((BitValue) left).getValue() == ((BitValue) right).getValue());
-        }
-        if (left instanceof VoidValue && right instanceof VoidValue) {
-            return new BitValue(true);
-        }
-        if (left instanceof FunctionValue && right instanceof FunctionValue) {
-            return new BitValue(left == right);
-        }
-        if (left instanceof ArrayValue && right instanceof ArrayValue) {
-            return new BitValue(left.equals(right));
-        }
-
-        try {
-            double leftNum = toNumber(left, "comparison");
-            double rightNum = toNumber(right, "comparison");
-            return new BitValue(leftNum == rightNum);
-        } catch (JafRuntimeException e) {
-            return new BitValue(false);
-        }
+        return Operations.binary(node.getOperator(), left, right);
     }
 
     @Override
     public Value visit(Variable node) {
-        String name = node.getName();
+        Symbol name = node.getSymbol();
 
-        if (name.equals("length")) {
-            return new BuiltinFunctionValue("length");
+        if (name.isBuiltin()) {
+            return new BuiltinFunctionValue(name.getName());
         }
 
-        if (name.equals("print")) {
-            return new BuiltinFunctionValue("print");
+        if (node.isResolved()) {
+            return environment.get(node.getDepth(), node.getSlot(), name);
         }
 
         return environment.get(name);
@@ -260,7 +200,11 @@ public class Interpreter implements AstVisitor<Value> {
     @Override
     public Value visit(Assignment node) {
         Value value = node.getValue().accept(this);
-        environment = environment.put(node.getVariableName(), value);
+        if (node.isResolved()) {
+            environment = environment.put(node.getDepth(), node.getSlot(), node.getVariable(), value);
+        } else {
+            environment = environment.put(node.getVariable(), value);
+        }
         return value;
     }
 
@@ -279,7 +223,7 @@ public class Interpreter implements AstVisitor<Value> {
     public Value visit(IfExpression node) {
         Value conditionValue = node.getCondition().accept(this);
 
-        boolean condition = toBoolean(conditionValue, "if condition");
+        boolean condition = Operations.toBoolean(conditionValue, "if condition");
 
         if (condition) {
             return node.getThenBranch().accept(this);
@@ -292,15 +236,15 @@ public class Interpreter implements AstVisitor<Value> {
 
     @Override
     public Value visit(WhileExpression node) {
-        resetIterationCount();
+        int outer = governor.enterLoop();
 
         Value lastIterationValue = VoidValue.INSTANCE;
 
         while (true) {
-            checkIterationLimit();
+            governor.iterate();
 
             Value conditionValue = node.getCondition().accept(this);
-            boolean condition = toBoolean(conditionValue, "while condition");
+            boolean condition = Operations.toBoolean(conditionValue, "while condition");
 
             if (!condition) {
                 break;
@@ -309,16 +253,23 @@ public class Interpreter implements AstVisitor<Value> {
             lastIterationValue = node.getBody().accept(this);
         }
 
+        governor.exitLoop(outer);
         return lastIterationValue;
     }
 
     @Override
     public Value visit(FunctionDefinition node) {
-        FunctionValue functionValue = new FunctionValue(node);
-
-        functions.put(node.getFunctionName(), functionValue);
+        FunctionValue functionValue;
 
-        environment = environment.put(node.getFunctionName(), functionValue);
+        if (node.isResolved()) {
+            functionValue = new FunctionValue(node, environment);
+            environment = environment.put(0, node.getSlot(), node.getFunction(), functionValue);
+        } else {
+            // Map environments are persistent, so an unresolved function
+            // captures the variables defined up to this point.
+            functionValue = new FunctionValue(node, environment);
+            environment = environment.put(node.getFunction(), functionValue);
+        }
 
         return functionValue;
     }
@@ -327,86 +278,126 @@ public class Interpreter implements AstVisitor<Value> {
     public Value visit(FunctionCall node) {
         String functionName = node.getFunctionName();
 
-        if (functionName.equals("length")) {
-            Value argument = node.getArgument().accept(this);
-            return builtinLength(argument);
+        if (node.isBuiltin()) {
+            return Operations.callBuiltin(functionName, evaluateArguments(node), output);
         }
 
-        if (functionName.equals("print")) {
-            Value argument = node.getArgument().accept(this);
-            System.out.println(argument);
-            return VoidValue.INSTANCE;
+        Value callee = node.isResolved()
+                ? environment.find(node.getDepth(), node.getSlot(), node.getFunction())
+                : environment.find(node.getFunction());
+        Operations.toCallable(callee, functionName);
+
+        Value[] arguments = evaluateArguments(node);
+
+        if (callee instanceof BuiltinFunctionValue) {
+            return Operations.callBuiltin(((BuiltinFunctionValue) callee).getName(), arguments, output);
         }
 
-        FunctionValue function = getFunction(functionName);
+        FunctionValue function = (FunctionValue) callee;
+        FunctionDefinition definition = function.getDefinition();
+        Operations.checkArgumentCount(definition.getFunctionName(), definition.getArity(), arguments.length);
+        governor.tick();
+        Target target = getTarget(node, definition);
+
+        if (target.memo != null && MemoCache.isCacheable(arguments[0])) {
+            MemoCache memo = target.memo;
+            Value result = memo.get(arguments[0]);
+            if (result == null) {
+                result = executeFunction(function, arguments);
+                memo.put(arguments[0], result);
+            }
+            return result;
+        }
 
-        Value argument = node.getArgument().accept(this);
+        if (target.profile != null) {
+            JitProfile profile = target.profile;
+            NumericFunction compiled = profile.recordCall();
+            if (compiled != null) {
+                if (arguments[0] instanceof NumberValue && isSelfBound(function)) {
+                    return new NumberValue(compiled.apply(((NumberValue) arguments[0]).getValue()));
+                }
+                profile.deoptimize();
+            }
+        }
 
-        return executeFunction(function, argument);
+        return executeFunction(function, arguments);
     }
 
-    @Override
-    public Value visit(ArrayLiteral node) {
-        List<NumberValue> elements = new ArrayList<>();
-
-        for (Expression elementExpr : node.getElements()) {
-            Value elementValue = elementExpr.accept(this);
+    /**
+     * Compiled code calls itself directly, so it may only run while the name
+     * its body calls still holds its definition. Nothing in the compiled
+     * subset can rebind a name, so checking on entry covers every recursive
+     * call inside it.
+     */
+    private static boolean isSelfBound(FunctionValue function) {
+        FunctionDefinition definition = function.getDefinition();
+        Value bound = function.getClosure().find(0, definition.getSlot(), definition.getFunction());
+        return bound instanceof FunctionValue && ((FunctionValue) bound).getDefinition() == definition;
+    }
 
-            if (!(elementValue instanceof NumberValue)) {
-                throw new JafRuntimeException(
-                        "Array element must be number, got: " + elementValue.getType()
-                );
-            }
+    private Value[] evaluateArguments(FunctionCall node) {
+        List<Expression> argumentExprs = node.getArguments();
+        Value[] arguments = new Value[argumentExprs.size()];
 
-            elements.add((NumberValue) elementValue);
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = argumentExprs.get(i).accept(this);
         }
 
-        return new ArrayValue(elements);
+        return arguments;
     }
 
     @Override
-    public Value visit(ArrayAccess node) {
-        Value arrayValue = node.getArray().accept(this);
+    public Value visit(ArrayLiteral node) {
+        List<Expression> elementExprs = node.getElements();
+        double[] elements = new double[elementExprs.size()];
 
-        if (!(arrayValue instanceof ArrayValue)) {
-            throw new JafRuntimeException(
-                    "Expected array, got: " + arrayValue.getType()
-            );
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = Operations.toElement(elementExprs.get(i).accept(this)).getValue();
         }
 
-        ArrayValue array = (ArrayValue) arrayValue;
+        return governor.allocate(new ArrayValue(elements));
+    }
+
+    @Override
+    public Value visit(ArrayAccess node) {
+        ArrayValue array = Operations.toArray(node.getArray().accept(this));
 
         Value indexValue = node.getIndex().accept(this);
-        int index = (int) toNumber(indexValue, "array access");
+        int index = (int) Operations.toNumber(indexValue, "array access");
 
         return array.get(index);
     }
 
     @Override
     public Value visit(ArrayAssignment node) {
-        Value arrayValue = node.getArray().accept(this);
-
-        if (!(arrayValue instanceof ArrayValue)) {
-            throw new JafRuntimeException(
-                    "Expected array, got: " + arrayValue.getType()
-            );
-        }
-
-        ArrayValue array = (ArrayValue) arrayValue;
+        ArrayValue array = Operations.toArray(node.getArray().accept(this));
 
         Value indexValue = node.getIndex().accept(this);
-        int index = (int) toNumber(indexValue, "array element assignment");
+        int index = (int) Operations.toNumber(indexValue, "array element assignment");
 
         Value value = node.getValue().accept(this);
 
-        if (!(value instanceof NumberValue)) {
-            throw new JafRuntimeException(
-                    "Array element must be number, got: " + value.getType()
-            );
-        }
-
-        array.set(index, (NumberValue) value);
+        array.set(index, Operations.toElement(value));
 
         return value;
     }
+
+    /**
+     * What one execution keeps per function definition: the JIT profile of
+     * a one-parameter function when the JIT is on, and the results of a
+     * memoized one.
+     */
+    private static final class Target {
+
+        final FunctionDefinition definition;
+        final JitProfile profile;
+        final MemoCache memo;
+
+        Target(FunctionDefinition definition, CodeCache codeCache) {
+            this.definition = definition;
+            this.profile = codeCache != null && definition.getArity() == 1
+                    ? new JitProfile(definition, codeCache) : null;
+            this.memo = definition.isMemoized() ? new MemoCache() : null;
+        }
+    }
 }
\ No newline at end of file
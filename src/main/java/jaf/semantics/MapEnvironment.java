@@ -2,25 +2,39 @@ package jaf.semantics;
 
 import jaf.lang.Value;
 import jaf.lang.JafRuntimeException;
+import jaf.lang.Symbol;
+import jaf.syntax.Scope;
 import java.util.HashMap;
 import java.util.Map;
 
 public class MapEnvironment implements Environment {
     
-    private final Map<String, Value> variables;
+    private final Map<Symbol, Value> variables;
     private final Environment parent;
     
     public MapEnvironment() {
-        this(new HashMap<>(), null);
+        this(new HashMap<Symbol, Value>(), null);
+    }
+
+    public MapEnvironment(Map<String, Value> variables) {
+        this(intern(variables), null);
     }
     
-    private MapEnvironment(Map<String, Value> variables, Environment parent) {
+    private MapEnvironment(Map<Symbol, Value> variables, Environment parent) {
         this.variables = new HashMap<>(variables);
         this.parent = parent;
     }
     
+    private static Map<Symbol, Value> intern(Map<String, Value> variables) {
+        Map<Symbol, Value> symbols = new HashMap<>();
+        for (Map.Entry<String, Value> entry : variables.entrySet()) {
+            symbols.put(Symbol.of(entry.getKey()), entry.getValue());
+        }
+        return symbols;
+    }
+    
     @Override
-    public Value get(String name) throws JafRuntimeException {
+    public Value get(Symbol name) throws JafRuntimeException {
         if (variables.containsKey(name)) {
             return variables.get(name);
         }
@@ -31,19 +45,43 @@ public class MapEnvironment implements Environment {
     }
     
     @Override
-    public Environment put(String name, Value value) {
-        Map<String, Value> newVars = new HashMap<>(variables);
+    public Value get(int depth, int slot, Symbol name) throws JafRuntimeException {
+        return get(name);
+    }
+    
+    @Override
+    public Value find(Symbol name) {
+        Value value = variables.get(name);
+        if (value != null) {
+            return value;
+        }
+        return parent != null ? parent.find(name) : null;
+    }
+    
+    @Override
+    public Value find(int depth, int slot, Symbol name) {
+        return find(name);
+    }
+    
+    @Override
+    public Environment put(Symbol name, Value value) {
+        Map<Symbol, Value> newVars = new HashMap<>(variables);
         newVars.put(name, value);
         return new MapEnvironment(newVars, parent);
     }
     
     @Override
-    public boolean containsLocal(String name) {
+    public Environment put(int depth, int slot, Symbol name, Value value) {
+        return put(name, value);
+    }
+    
+    @Override
+    public boolean containsLocal(Symbol name) {
         return variables.containsKey(name);
     }
     
     @Override
-    public boolean contains(String name) {
+    public boolean contains(Symbol name) {
         if (variables.containsKey(name)) {
             return true;
         }
@@ -52,7 +90,12 @@ public class MapEnvironment implements Environment {
     
     @Override
     public Environment createChild() {
-        return new MapEnvironment(new HashMap<>(), this);
+        return new MapEnvironment(new HashMap<Symbol, Value>(), this);
+    }
+    
+    @Override
+    public Environment createChild(Scope scope) {
+        return createChild();
     }
     
     @Override
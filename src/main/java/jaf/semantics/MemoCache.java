@@ -0,0 +1,48 @@
+package jaf.semantics;
+
+import jaf.lang.Value;
+import jaf.lang.NumberValue;
+import jaf.lang.IntValue;
+import jaf.lang.StringValue;
+import jaf.lang.BitValue;
+import jaf.lang.VoidValue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of one memoized function, keyed by its argument and evicted least
+ * recently used first once {@link #CAPACITY} entries are held. Only numbers,
+ * strings and bits are cached, as arguments or results: arrays can change
+ * after the call and functions carry their closure. The capacity is set
+ * with the system property {@code jaf.memo.capacity}; zero turns caching off.
+ */
+public final class MemoCache {
+
+    public static final int CAPACITY = Integer.getInteger("jaf.memo.capacity", 10_000);
+
+    private final Map<Value, Value> entries = new LinkedHashMap<Value, Value>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Value, Value> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    public static boolean isCacheable(Value value) {
+        return CAPACITY > 0 && (value instanceof NumberValue || value instanceof IntValue
+                || value instanceof StringValue || value instanceof BitValue);
+    }
+
+    /**
+     * Returns the cached result for the argument, or null.
+     */
+    public Value get(Value argument) {
+        return entries.get(argument);
+    }
+
+    public void put(Value argument, Value result) {
+        if (isCacheable(result) || result instanceof VoidValue) {
+            entries.put(argument, result);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package jaf.semantics;
+
+import jaf.lang.Value;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.NumberValue;
+import jaf.lang.StringValue;
+import jaf.lang.BitValue;
+import jaf.lang.VoidValue;
+import jaf.lang.FunctionValue;
+import jaf.lang.ArrayValue;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.lang.Governor;
+import jaf.syntax.BinaryOp;
+
+import java.io.PrintWriter;
+
+public final class Operations {
+
+    private Operations() {
+    }
+
+    public static Value binary(BinaryOp.Operator operator, Value left, Value right) {
+        switch (operator) {
+            case ADD:
+                return add(left, right);
+            case SUBTRACT:
+                return subtract(left, right);
+            case MULTIPLY:
+                return multiply(left, right);
+            case DIVIDE:
+                return divide(left, right);
+            case EQUAL:
+                return equal(left, right);
+            case NOT_EQUAL:
+                return notEqual(left, right);
+            case LESS:
+                return less(left, right);
+            case LESS_EQUAL:
+                return lessEqual(left, right);
+            case GREATER:
+                return greater(left, right);
+            case GREATER_EQUAL:
+                return greaterEqual(left, right);
+            case AND:
+                return and(left, right);
+            case OR:
+                return or(left, right);
+            default:
+                throw new JafRuntimeException("Unknown operator: " + operator);
+        }
+    }
+
+    public static Value add(Value left, Value right) {
+        if (left instanceof StringValue || right instanceof StringValue) {
+            StringValue result = StringValue.concat(left, right);
+            Governor governor = Governor.current();
+            if (governor != null) {
+                governor.allocateCharacters(left instanceof StringValue
+                        ? result.length() - ((StringValue) left).length()
+                        : result.length());
+            }
+            return result;
+        }
+        return new NumberValue(toNumber(left, "addition") + toNumber(right, "addition"));
+    }
+
+    public static Value subtract(Value left, Value right) {
+        return new NumberValue(toNumber(left, "subtraction") - toNumber(right, "subtraction"));
+    }
+
+    public static Value multiply(Value left, Value right) {
+        return new NumberValue(toNumber(left, "multiplication") * toNumber(right, "multiplication"));
+    }
+
+    public static Value divide(Value left, Value right) {
+        double divisor = toNumber(right, "division");
+        if (divisor == 0) {
+            throw new JafRuntimeException("Division by zero");
+        }
+        return new NumberValue(toNumber(left, "division") / divisor);
+    }
+
+    public static BitValue notEqual(Value left, Value right) {
+        return BitValue.valueOf(!equal(left, right).getValue());
+    }
+
+    public static BitValue less(Value left, Value right) {
+        return BitValue.valueOf(toNumber(left, "comparison") < toNumber(right, "comparison"));
+    }
+
+    public static BitValue lessEqual(Value left, Value right) {
+        return BitValue.valueOf(toNumber(left, "comparison") <= toNumber(right, "comparison"));
+    }
+
+    public static BitValue greater(Value left, Value right) {
+        return BitValue.valueOf(toNumber(left, "comparison") > toNumber(right, "comparison"));
+    }
+
+    public static BitValue greaterEqual(Value left, Value right) {
+        return BitValue.valueOf(toNumber(left, "comparison") >= toNumber(right, "comparison"));
+    }
+
+    public static BitValue and(Value left, Value right) {
+        return BitValue.valueOf(toBoolean(left, "logical AND") && toBoolean(right, "logical AND"));
+    }
+
+    public static BitValue or(Value left, Value right) {
+        return BitValue.valueOf(toBoolean(left, "logical OR") || toBoolean(right, "logical OR"));
+    }
+
+    public static BitValue equal(Value left, Value right) {
+        if (left instanceof StringValue && right instanceof StringValue) {
+            return BitValue.valueOf(left.equals(right));
+        }
+        if (left instanceof NumberValue && right instanceof NumberValue) {
+            double leftNum = ((NumberValue) left).getValue();
+            double rightNum = ((NumberValue) right).getValue();
+            return BitValue.valueOf(leftNum == rightNum);
+        }
+        if (left instanceof BitValue && right instanceof BitValue) {
+            return BitValue.valueOf(((BitValue) left).getValue() == ((BitValue) right).getValue());
+        }
+        if (left instanceof VoidValue && right instanceof VoidValue) {
+            return BitValue.TRUE;
+        }
+        if (left instanceof FunctionValue && right instanceof FunctionValue) {
+            return BitValue.valueOf(left == right);
+        }
+        if (left instanceof ArrayValue && right instanceof ArrayValue) {
+            return BitValue.valueOf(left.equals(right));
+        }
+
+        try {
+            double leftNum = toNumber(left, "comparison");
+            double rightNum = toNumber(right, "comparison");
+            return BitValue.valueOf(leftNum == rightNum);
+        } catch (JafRuntimeException e) {
+            return BitValue.FALSE;
+        }
+    }
+
+    public static double toNumber(Value value, String operation) {
+        if (value instanceof NumberValue) {
+            return ((NumberValue) value).getValue();
+        }
+        if (value instanceof BitValue) {
+            return ((BitValue) value).getValue() ? 1 : 0;
+        }
+        if (value instanceof VoidValue) {
+            throw new JafRuntimeException(
+                    String.format("Cannot use void in %s operation", operation)
+            );
+        }
+        if (value instanceof FunctionValue) {
+            throw new JafRuntimeException(
+                    String.format("Cannot use function in %s operation", operation)
+            );
+        }
+        if (value instanceof ArrayValue) {
+            throw new JafRuntimeException(
+                    String.format("Cannot use array in %s operation", operation)
+            );
+        }
+        throw new JafRuntimeException(
+                String.format("Unsupported type for arithmetic: %s", value.getType())
+        );
+    }
+
+    public static boolean toBoolean(Value value, String operation) {
+        if (value instanceof BitValue) {
+            return ((BitValue) value).getValue();
+        }
+        if (value instanceof NumberValue) {
+            return ((NumberValue) value).getValue() != 0;
+        }
+
+        throw new JafRuntimeException(
+                String.format("Cannot use type %s in %s operation",
+                        value.getType(), operation)
+        );
+    }
+
+    public static ArrayValue toArray(Value value) {
+        if (!(value instanceof ArrayValue)) {
+            throw new JafRuntimeException(
+                    "Expected array, got: " + value.getType()
+            );
+        }
+        return (ArrayValue) value;
+    }
+
+    public static NumberValue toElement(Value value) {
+        if (!(value instanceof NumberValue)) {
+            throw new JafRuntimeException(
+                    "Array element must be number, got: " + value.getType()
+            );
+        }
+        return (NumberValue) value;
+    }
+
+    /**
+     * Checks that the value found for a called name can be called.
+     */
+    public static Value toCallable(Value callee, String name) {
+        if (callee instanceof FunctionValue || callee instanceof BuiltinFunctionValue) {
+            return callee;
+        }
+        if (callee == null) {
+            throw new JafRuntimeException("Undefined function: '" + name + "'");
+        }
+        throw new JafRuntimeException("Cannot call " + callee.getType() + " '" + name + "'");
+    }
+
+    public static Value callBuiltin(String name, Value[] arguments, PrintWriter output) {
+        switch (name) {
+            case "length":
+                checkArgumentCount(name, 1, arguments.length);
+                return length(arguments[0]);
+            case "print":
+                checkArgumentCount(name, 1, arguments.length);
+                output.println(arguments[0]);
+                return VoidValue.INSTANCE;
+            case "mmap":
+                checkArgumentCount(name, 1, arguments.length);
+                return mmap(arguments[0]);
+            case "save":
+                checkArgumentCount(name, 2, arguments.length);
+                return save(arguments[0], arguments[1]);
+            default:
+                throw new JafRuntimeException("Unknown builtin function: '" + name + "'");
+        }
+    }
+
+    public static void checkArgumentCount(String name, int expected, int actual) {
+        if (actual != expected) {
+            throw new JafRuntimeException(String.format("Function %s expects %d argument%s, got %d",
+                    name, expected, expected == 1 ? "" : "s", actual));
+        }
+    }
+
+    public static Value length(Value argument) {
+        if (!(argument instanceof ArrayValue)) {
+            throw new JafRuntimeException("Function length expects array, got: " + argument.getType());
+        }
+
+        ArrayValue array = (ArrayValue) argument;
+        return NumberValue.valueOf(array.size());
+    }
+
+    public static Value mmap(Value argument) {
+        if (!(argument instanceof StringValue)) {
+            throw new JafRuntimeException("Function mmap expects string, got: " + argument.getType());
+        }
+
+        ArrayValue array = ArrayValue.map(((StringValue) argument).getValue());
+        Governor governor = Governor.current();
+        return governor != null ? governor.allocate(array) : array;
+    }
+
+    public static Value save(Value array, Value fileName) {
+        if (!(array instanceof ArrayValue)) {
+            throw new JafRuntimeException("Function save expects array, got: " + array.getType());
+        }
+        if (!(fileName instanceof StringValue)) {
+            throw new JafRuntimeException("Function save expects string, got: " + fileName.getType());
+        }
+
+        ((ArrayValue) array).save(((StringValue) fileName).getValue());
+        return VoidValue.INSTANCE;
+    }
+}
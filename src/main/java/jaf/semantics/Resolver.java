@@ -0,0 +1,324 @@
+package jaf.semantics;
+
+import jaf.lang.AstVisitor;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+import jaf.syntax.Scope;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a parsed program so that every variable carries a (depth, slot)
+ * address into a {@link FrameEnvironment}.
+ *
+ * Top-level code owns the global frame: every name it touches gets a slot.
+ * A function frame holds its parameter and every name the body assigns or
+ * defines. Scoping is lexical: any other name in a function body resolves to
+ * the nearest enclosing frame that binds it, falling back to a global slot,
+ * and the depth counts the function frames in between. The name of a
+ * function call is resolved the same way, since functions are values held
+ * by variables; only calls of builtins stay unresolved. Each resolved call
+ * is also numbered as a call site for the interpreter's inline caches.
+ */
+public class Resolver implements AstVisitor<Expression> {
+
+    private FrameLayout frame;
+    private Scope globals;
+    private int callSites;
+
+    public List<Expression> resolve(List<Expression> program) {
+        frame = new FrameLayout(null);
+        callSites = 0;
+
+        List<Expression> resolved = new ArrayList<>();
+        for (Expression expr : program) {
+            resolved.add(expr.accept(this));
+        }
+
+        globals = frame.toScope();
+        frame = null;
+        return resolved;
+    }
+
+    public Scope getGlobals() {
+        if (globals == null) {
+            throw new IllegalStateException("No program has been resolved");
+        }
+        return globals;
+    }
+
+    @Override
+    public Expression visit(StringLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(NumberLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(IntLiteral node) {
+        return node;
+    }
+
+    @Override
+    public Expression visit(BinaryOp node) {
+        return new BinaryOp(node.getOperator(), node.getLeft().accept(this), node.getRight().accept(this));
+    }
+
+    @Override
+    public Expression visit(Variable node) {
+        int depth = 0;
+        for (FrameLayout layout = frame; ; layout = layout.enclosing, depth++) {
+            int slot = layout.lookup(node.getName());
+            if (slot >= 0) {
+                return new Variable(node.getSymbol(), depth, slot);
+            }
+        }
+    }
+
+
+    @Override
+    public Expression visit(Assignment node) {
+        Expression value = node.getValue().accept(this);
+        int slot = frame.declare(node.getVariableName());
+        return new Assignment(node.getVariable(), value, 0, slot);
+    }
+
+    @Override
+    public Expression visit(Block node) {
+        return new Block(resolveAll(node.getExpressions()));
+    }
+
+    @Override
+    public Expression visit(IfExpression node) {
+        Expression condition = node.getCondition().accept(this);
+        Expression thenBranch = node.getThenBranch().accept(this);
+        Expression elseBranch = node.hasElseBranch() ? node.getElseBranch().accept(this) : null;
+        return new IfExpression(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Expression visit(WhileExpression node) {
+        return new WhileExpression(node.getCondition().accept(this), node.getBody().accept(this));
+    }
+
+    @Override
+    public Expression visit(FunctionDefinition node) {
+        int slot = frame.declare(node.getFunctionName());
+
+        FrameLayout enclosing = frame;
+        frame = new FrameLayout(enclosing);
+
+        try {
+            for (String parameterName : node.getParameterNames()) {
+                frame.declare(parameterName);
+            }
+            for (String name : Declarations.of(node.getBody())) {
+                frame.declare(name);
+            }
+
+            Expression body = node.getBody().accept(this);
+
+            return new FunctionDefinition(node.getFunctionName(), node.getParameterNames(), body,
+                    slot, frame.toScope(), node.isMemoized());
+        } finally {
+            frame = enclosing;
+        }
+    }
+
+    @Override
+    public Expression visit(FunctionCall node) {
+        List<Expression> arguments = resolveAll(node.getArguments());
+        if (node.isBuiltin()) {
+            return new FunctionCall(node.getFunction(), arguments);
+        }
+        Variable callee = (Variable) visit(new Variable(node.getFunction()));
+        return new FunctionCall(node.getFunction(), arguments, callee.getDepth(), callee.getSlot(), callSites++);
+    }
+
+    @Override
+    public Expression visit(ArrayLiteral node) {
+        return new ArrayLiteral(resolveAll(node.getElements()));
+    }
+
+    @Override
+    public Expression visit(ArrayAccess node) {
+        return new ArrayAccess(node.getArray().accept(this), node.getIndex().accept(this));
+    }
+
+    @Override
+    public Expression visit(ArrayAssignment node) {
+        return new ArrayAssignment(node.getArray().accept(this), node.getIndex().accept(this),
+                node.getValue().accept(this));
+    }
+
+    private List<Expression> resolveAll(List<Expression> expressions) {
+        List<Expression> resolved = new ArrayList<>(expressions.size());
+        for (Expression expr : expressions) {
+            resolved.add(expr.accept(this));
+        }
+        return resolved;
+    }
+
+    private static final class FrameLayout {
+
+        private final Map<String, Integer> slots = new LinkedHashMap<>();
+        private final FrameLayout enclosing;
+
+        FrameLayout(FrameLayout enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        int declare(String name) {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+
+        int lookup(String name) {
+            if (enclosing == null) {
+                return declare(name);
+            }
+            Integer slot = slots.get(name);
+            return slot != null ? slot : -1;
+        }
+
+        Scope toScope() {
+            return new Scope(new ArrayList<>(slots.keySet()));
+        }
+    }
+
+    /**
+     * Collects the names a function body binds in its own frame, without
+     * descending into nested function bodies.
+     */
+    private static final class Declarations implements AstVisitor<Void> {
+
+        private final Set<String> names = new LinkedHashSet<>();
+
+        static Set<String> of(Expression body) {
+            Declarations declarations = new Declarations();
+            body.accept(declarations);
+            return declarations.names;
+        }
+
+        @Override
+        public Void visit(StringLiteral node) {
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberLiteral node) {
+            return null;
+        }
+
+        @Override
+        public Void visit(IntLiteral node) {
+            return null;
+        }
+
+        @Override
+        public Void visit(BinaryOp node) {
+            node.getLeft().accept(this);
+            node.getRight().accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visit(Variable node) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Assignment node) {
+            node.getValue().accept(this);
+            names.add(node.getVariableName());
+            return null;
+        }
+
+        @Override
+        public Void visit(Block node) {
+            for (Expression expr : node.getExpressions()) {
+                expr.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(IfExpression node) {
+            node.getCondition().accept(this);
+            node.getThenBranch().accept(this);
+            if (node.hasElseBranch()) {
+                node.getElseBranch().accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(WhileExpression node) {
+            node.getCondition().accept(this);
+            node.getBody().accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionDefinition node) {
+            names.add(node.getFunctionName());
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCall node) {
+            for (Expression argument : node.getArguments()) {
+                argument.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(ArrayLiteral node) {
+            for (Expression element : node.getElements()) {
+                element.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(ArrayAccess node) {
+            node.getArray().accept(this);
+            node.getIndex().accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visit(ArrayAssignment node) {
+            node.getArray().accept(this);
+            node.getIndex().accept(this);
+            node.getValue().accept(this);
+            return null;
+        }
+    }
+}
@@ -1,25 +1,54 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.Symbol;
 
 public final class Assignment implements Expression {
     
-    private final String variableName;
+    private final Symbol variable;
     private final Expression value;
+    private final int depth;
+    private final int slot;
     
     public Assignment(String variableName, Expression value) {
-        this.variableName = variableName;
+        this(Symbol.of(variableName), value, -1, -1);
+    }
+    
+    public Assignment(Symbol variable, Expression value) {
+        this(variable, value, -1, -1);
+    }
+    
+    public Assignment(Symbol variable, Expression value, int depth, int slot) {
+        this.variable = variable;
         this.value = value;
+        this.depth = depth;
+        this.slot = slot;
     }
     
     public String getVariableName() {
-        return variableName;
+        return variable.getName();
+    }
+    
+    public Symbol getVariable() {
+        return variable;
     }
     
     public Expression getValue() {
         return value;
     }
     
+    public int getDepth() {
+        return depth;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+    
+    public boolean isResolved() {
+        return slot >= 0;
+    }
+    
     @Override
     public <R> R accept(AstVisitor<R> visitor) {
         return visitor.visit(this);
@@ -27,6 +56,6 @@ public final class Assignment implements Expression {
     
     @Override
     public String toString() {
-        return "Assignment(" + variableName + " = " + value + ")";
+        return "Assignment(" + variable + " = " + value + ")";
     }
-}
\ No newline at end of file
+}
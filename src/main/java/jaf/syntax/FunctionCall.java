@@ -1,23 +1,79 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.Symbol;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
 
+/**
+ * A call of a builtin or of the function held by a variable. A resolved call
+ * carries the (depth, slot) address of that variable, like {@link Variable},
+ * and a site number, unique within its program, that indexes the AST
+ * interpreter's inline caches.
+ */
 public final class FunctionCall implements Expression {
     
-    private final String functionName;
-    private final Expression argument;
+    private final Symbol function;
+    private final List<Expression> arguments;
+    private final int depth;
+    private final int slot;
+    private final int site;
     
-    public FunctionCall(String functionName, Expression argument) {
-        this.functionName = functionName;
-        this.argument = argument;
+    public FunctionCall(String functionName, List<Expression> arguments) {
+        this(Symbol.of(functionName), arguments, -1, -1);
+    }
+    
+    public FunctionCall(Symbol function, List<Expression> arguments) {
+        this(function, arguments, -1, -1);
+    }
+    
+    public FunctionCall(Symbol function, List<Expression> arguments, int depth, int slot) {
+        this(function, arguments, depth, slot, -1);
+    }
+    
+    public FunctionCall(Symbol function, List<Expression> arguments, int depth, int slot, int site) {
+        this.function = function;
+        this.arguments = new ArrayList<>(arguments);
+        this.depth = depth;
+        this.slot = slot;
+        this.site = site;
     }
     
     public String getFunctionName() {
-        return functionName;
+        return function.getName();
+    }
+    
+    public Symbol getFunction() {
+        return function;
+    }
+    
+    public List<Expression> getArguments() {
+        return Collections.unmodifiableList(arguments);
+    }
+    
+    public int getArgumentCount() {
+        return arguments.size();
+    }
+    
+    public int getDepth() {
+        return depth;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+    
+    public int getSite() {
+        return site;
+    }
+    
+    public boolean isResolved() {
+        return slot >= 0;
     }
     
-    public Expression getArgument() {
-        return argument;
+    public boolean isBuiltin() {
+        return function.isBuiltin();
     }
     
     @Override
@@ -27,6 +83,11 @@ public final class FunctionCall implements Expression {
     
     @Override
     public String toString() {
-        return functionName + "(" + argument + ")";
+        StringBuilder sb = new StringBuilder(function.getName()).append("(");
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(arguments.get(i));
+        }
+        return sb.append(")").toString();
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,93 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.Symbol;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
 
+/**
+ * A named function. Once resolved, its parameters occupy the first slots of
+ * the function's frame, in order. A memoized function is one the optimizer
+ * proved pure, so engines may answer repeated calls from a cache.
+ */
 public final class FunctionDefinition implements Expression {
     
-    private final String functionName;
-    private final String parameterName;
+    private final Symbol function;
+    private final List<String> parameterNames;
+    private final Symbol[] parameters;
     private final Expression body;
+    private final int slot;
+    private final Scope scope;
+    private final boolean memoized;
     
-    public FunctionDefinition(String functionName, String parameterName, Expression body) {
-        this.functionName = functionName;
-        this.parameterName = parameterName;
+    public FunctionDefinition(String functionName, List<String> parameterNames, Expression body) {
+        this(functionName, parameterNames, body, -1, null, false);
+    }
+    
+    public FunctionDefinition(String functionName, List<String> parameterNames, Expression body,
+                              int slot, Scope scope) {
+        this(functionName, parameterNames, body, slot, scope, false);
+    }
+    
+    public FunctionDefinition(String functionName, List<String> parameterNames, Expression body,
+                              int slot, Scope scope, boolean memoized) {
+        this.function = Symbol.of(functionName);
+        this.parameterNames = new ArrayList<>(parameterNames);
+        this.parameters = new Symbol[parameterNames.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = Symbol.of(parameterNames.get(i));
+        }
         this.body = body;
+        this.slot = slot;
+        this.scope = scope;
+        this.memoized = memoized;
     }
     
     public String getFunctionName() {
-        return functionName;
+        return function.getName();
+    }
+    
+    public Symbol getFunction() {
+        return function;
+    }
+    
+    public List<String> getParameterNames() {
+        return Collections.unmodifiableList(parameterNames);
+    }
+    
+    public String getParameterName(int index) {
+        return parameterNames.get(index);
     }
     
-    public String getParameterName() {
-        return parameterName;
+    public Symbol getParameter(int index) {
+        return parameters[index];
+    }
+    
+    public int getArity() {
+        return parameterNames.size();
     }
     
     public Expression getBody() {
         return body;
     }
     
+    public int getSlot() {
+        return slot;
+    }
+    
+    public Scope getScope() {
+        return scope;
+    }
+    
+    public boolean isResolved() {
+        return scope != null;
+    }
+    
+    public boolean isMemoized() {
+        return memoized;
+    }
+    
     @Override
     public <R> R accept(AstVisitor<R> visitor) {
         return visitor.visit(this);
@@ -33,6 +95,6 @@ public final class FunctionDefinition implements Expression {
     
     @Override
     public String toString() {
-        return "func " + functionName + "(" + parameterName + ") " + body;
+        return "func " + function + "(" + String.join(", ", parameterNames) + ") " + body;
     }
-}
\ No newline at end of file
+}
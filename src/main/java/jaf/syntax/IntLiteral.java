@@ -1,19 +1,26 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.NumberValue;
 
 public final class IntLiteral implements Expression {
     
     private final int value;
+    private final NumberValue constant;
     
     public IntLiteral(int value) {
         this.value = value;
+        this.constant = new NumberValue(value);
     }
     
     public int getValue() {
         return value;
     }
     
+    public NumberValue getConstant() {
+        return constant;
+    }
+    
     @Override
     public <R> R accept(AstVisitor<R> visitor) {
         return visitor.visit(this);
@@ -1,41 +1,139 @@
 package jaf.syntax;
 
 import jaf.lang.JafException;
+import jaf.lang.Symbol;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Lexer {
-
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
-    private final Map<String, Token.Type> keywords;
-    private int start = 0;
-    private int current = 0;
+/**
+ * Turns source text into tokens on demand. The source is read through a
+ * small window of {@link #BUFFER_SIZE} characters and only the lexeme of the
+ * token being scanned is kept, so a lexer pulled by a {@link TokenStream}
+ * holds a bounded amount of the source however large the script is.
+ *
+ * Tokens are written into a {@link TokenBuffer}. Identifiers become
+ * {@link Symbol}s; the lexer caches the symbols it has seen in a table probed
+ * with the scanned characters, so scanning a name that was seen before
+ * allocates nothing and takes no lock. Integer literals are converted
+ * without a string.
+ */
+public class Lexer implements Closeable {
+
+    public static final int BUFFER_SIZE = 1 << 13;
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean drained;
+    private char[] text = new char[64];
+    private int textLength;
+    private Symbol[] symbols = new Symbol[256];
+    private int symbolCount;
+    private final Map<Symbol, Token.Type> keywords;
+    private final TokenBuffer scratch = new TokenBuffer(1);
     private int line = 1;
     private int column = 1;
+    private int startLine;
+    private int startColumn;
 
     public Lexer(String source) {
-        this.source = source;
+        this(new StringReader(source));
+    }
+
+    public Lexer(Reader reader) {
+        this(reader, 1);
+    }
+
+    /**
+     * Returns a lexer for source text that starts at the beginning of line
+     * {@code line} of a larger script.
+     */
+    Lexer(Reader reader, int line) {
+        this.reader = reader;
+        this.line = line;
 
         keywords = new HashMap<>();
-        keywords.put("if", Token.Type.IF);
-        keywords.put("else", Token.Type.ELSE);
-        keywords.put("while", Token.Type.WHILE);
-        keywords.put("func", Token.Type.FUNC);
+        keyword("if", Token.Type.IF);
+        keyword("else", Token.Type.ELSE);
+        keyword("while", Token.Type.WHILE);
+        keyword("func", Token.Type.FUNC);
+    }
+
+    private void keyword(String name, Token.Type type) {
+        name.getChars(0, name.length(), text, 0);
+        textLength = name.length();
+        keywords.put(intern(), type);
     }
 
+    /**
+     * Returns a lexer reading a UTF-8 file through memory mappings instead
+     * of loading it.
+     */
+    public static Lexer map(Path file) throws IOException {
+        return new Lexer(new MappedReader(file));
+    }
+
+    /**
+     * Scans the whole source at once.
+     */
     public List<Token> scanTokens() throws JafException {
-        while (!isAtEnd()) {
-            start = current;
-            scanToken();
-        }
-        tokens.add(Token.eof(line, column));
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.getType() != Token.Type.EOF);
         return tokens;
     }
 
-    private void scanToken() throws JafException {
+    /**
+     * Scans the next token. Once the source is exhausted, every call
+     * returns an EOF token.
+     */
+    public Token nextToken() throws JafException {
+        scratch.clear();
+        scan(scratch, 1);
+        return scratch.get(0);
+    }
+
+    /**
+     * Appends up to {@code count} tokens to {@code out}, stopping after an
+     * EOF token, and returns how many were appended.
+     */
+    public int scan(TokenBuffer out, int count) throws JafException {
+        int start = out.size();
+        while (out.size() - start < count) {
+            if (isAtEnd()) {
+                out.add(Token.Type.EOF, line, column);
+                break;
+            }
+            startLine = line;
+            startColumn = column;
+            scanToken(out);
+        }
+        return out.size() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Scans one token into {@code out}, or nothing after whitespace or a
+     * comment.
+     */
+    private void scanToken(TokenBuffer out) throws JafException {
         char c = advance();
 
         switch (c) {
@@ -45,50 +143,50 @@ public class Lexer {
                 }
                 break;
 
-            case '+': addToken(Token.Type.PLUS); break;
-            case '-': addToken(Token.Type.MINUS); break;
-            case '*': addToken(Token.Type.MULTIPLY); break;
-            case '/': addToken(Token.Type.DIVIDE); break;
-            case '(': addToken(Token.Type.LEFT_PAREN); break;
-            case ')': addToken(Token.Type.RIGHT_PAREN); break;
-            case '{': addToken(Token.Type.LEFT_BRACE); break;
-            case '}': addToken(Token.Type.RIGHT_BRACE); break;
-            case '[': addToken(Token.Type.LEFT_BRACKET); break;
-            case ']': addToken(Token.Type.RIGHT_BRACKET); break;
-            case ';': addToken(Token.Type.SEMICOLON); break;
-            case ',': addToken(Token.Type.COMMA); break;
-            case '<': addToken(match('=') ? Token.Type.LESS_EQUAL : Token.Type.LESS); break;
-            case '>': addToken(match('=') ? Token.Type.GREATER_EQUAL : Token.Type.GREATER); break;
+            case '+': token(out, Token.Type.PLUS); break;
+            case '-': token(out, Token.Type.MINUS); break;
+            case '*': token(out, Token.Type.MULTIPLY); break;
+            case '/': token(out, Token.Type.DIVIDE); break;
+            case '(': token(out, Token.Type.LEFT_PAREN); break;
+            case ')': token(out, Token.Type.RIGHT_PAREN); break;
+            case '{': token(out, Token.Type.LEFT_BRACE); break;
+            case '}': token(out, Token.Type.RIGHT_BRACE); break;
+            case '[': token(out, Token.Type.LEFT_BRACKET); break;
+            case ']': token(out, Token.Type.RIGHT_BRACKET); break;
+            case ';': token(out, Token.Type.SEMICOLON); break;
+            case ',': token(out, Token.Type.COMMA); break;
+            case '<': token(out, match('=') ? Token.Type.LESS_EQUAL : Token.Type.LESS); break;
+            case '>': token(out, match('=') ? Token.Type.GREATER_EQUAL : Token.Type.GREATER); break;
             case '=':
                 if (match('=')) {
-                    addToken(Token.Type.EQUAL);
+                    token(out, Token.Type.EQUAL);
                 } else {
-                    addToken(Token.Type.ASSIGN);
+                    token(out, Token.Type.ASSIGN);
                 }
                 break;
             case '!':
                 if (match('=')) {
-                    addToken(Token.Type.NOT_EQUAL);
+                    token(out, Token.Type.NOT_EQUAL);
                 } else {
-                    addToken(Token.Type.MINUS);
+                    token(out, Token.Type.MINUS);
                 }
                 break;
             case '&':
                 if (match('&')) {
-                    addToken(Token.Type.AND);
+                    token(out, Token.Type.AND);
                 } else {
                     throw new JafException("Expected '&&'", line, column - 1);
                 }
                 break;
             case '|':
                 if (match('|')) {
-                    addToken(Token.Type.OR);
+                    token(out, Token.Type.OR);
                 } else {
                     throw new JafException("Expected '||'", line, column - 1);
                 }
                 break;
             case '"':
-                string();
+                string(out);
                 break;
 
             case ' ':
@@ -103,53 +201,71 @@ public class Lexer {
 
             default:
                 if (isDigit(c)) {
-                    number();
+                    number(out, c);
                 } else if (isAlpha(c)) {
-                    identifier();
+                    identifier(out, c);
                 } else {
                     throw new JafException(
                             String.format("Unexpected character '%c'", c),
                             line, column - 1
                     );
                 }
-                break;
         }
     }
 
-    private void number() {
+    /**
+     * Scans a number starting with {@code first}. Integers of up to
+     * {@link #MAX_EXACT_DIGITS} digits are accumulated directly; anything
+     * else goes through {@link Double#parseDouble}.
+     */
+    private void number(TokenBuffer out, char first) throws JafException {
+        textLength = 0;
+        take(first);
         while (isDigit(peek())) {
-            advance();
+            take(advance());
         }
+        boolean integer = true;
 
         if (peek() == '.' && isDigit(peekNext())) {
-            advance();
+            integer = false;
+            take(advance());
             while (isDigit(peek())) {
-                advance();
+                take(advance());
             }
         }
 
         if (peek() == 'e' || peek() == 'E') {
-            advance();
+            integer = false;
+            take(advance());
             if (peek() == '+' || peek() == '-') {
-                advance();
+                take(advance());
             }
             while (isDigit(peek())) {
-                advance();
+                take(advance());
             }
         }
 
-        String lexeme = source.substring(start, current);
-        double value = Double.parseDouble(lexeme);
-        addToken(new Token(Token.Type.NUMBER, lexeme, value, line, column - lexeme.length()));
+        double value;
+        if (integer && textLength <= MAX_EXACT_DIGITS) {
+            long digits = 0;
+            for (int i = 0; i < textLength; i++) {
+                digits = digits * 10 + (text[i] - '0');
+            }
+            value = digits;
+        } else {
+            value = Double.parseDouble(new String(text, 0, textLength));
+        }
+        out.addNumber(value, startLine, startColumn);
     }
 
-    private void string() throws JafException {
+    private void string(TokenBuffer out) throws JafException {
+        textLength = 0;
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') {
                 line++;
                 column = 1;
             }
-            advance();
+            take(advance());
         }
 
         if (isAtEnd()) {
@@ -158,51 +274,142 @@ public class Lexer {
 
         advance();
 
-        String lexeme = source.substring(start, current);
-        String value = lexeme.substring(1, lexeme.length() - 1);
-        addToken(new Token(Token.Type.STRING, lexeme, value, line, column - lexeme.length()));
+        out.addString(new String(text, 0, textLength), startLine, startColumn);
     }
 
-    private void identifier() {
+    private void identifier(TokenBuffer out, char first) throws JafException {
+        textLength = 0;
+        take(first);
         while (isAlphaNumeric(peek())) {
-            advance();
+            take(advance());
         }
 
-        String lexeme = source.substring(start, current);
-
-        Token.Type type = keywords.get(lexeme);
+        Symbol symbol = intern();
+        Token.Type type = keywords.get(symbol);
         if (type == null) {
-            type = Token.Type.IDENTIFIER;
+            out.addSymbol(symbol, startLine, startColumn);
+        } else {
+            out.add(type, startLine, startColumn);
         }
+    }
 
-        addToken(new Token(type, lexeme, lexeme, line, column - lexeme.length()));
+    private void take(char c) {
+        if (textLength == text.length) {
+            char[] grown = new char[text.length * 2];
+            System.arraycopy(text, 0, grown, 0, textLength);
+            text = grown;
+        }
+        text[textLength++] = c;
     }
 
-    private char advance() {
-        column++;
-        return source.charAt(current++);
+    /**
+     * Returns the symbol spelled by the scanned text, creating a string and
+     * consulting the global table only the first time this lexer sees it.
+     */
+    private Symbol intern() {
+        int hash = 0;
+        for (int i = 0; i < textLength; i++) {
+            hash = 31 * hash + text[i];
+        }
+        int mask = symbols.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Symbol symbol = symbols[i];
+            if (symbol == null) {
+                symbol = Symbol.of(new String(text, 0, textLength));
+                symbols[i] = symbol;
+                if (++symbolCount * 2 > symbols.length) {
+                    rehash();
+                }
+                return symbol;
+            }
+            String name = symbol.getName();
+            if (name.hashCode() == hash && spells(name)) {
+                return symbol;
+            }
+        }
     }
 
-    private char peek() {
-        if (isAtEnd()) return '\0';
-        return source.charAt(current);
+    private boolean spells(String name) {
+        if (name.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (name.charAt(i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+    private void rehash() {
+        Symbol[] old = symbols;
+        symbols = new Symbol[old.length * 2];
+        int mask = symbols.length - 1;
+        for (Symbol symbol : old) {
+            if (symbol != null) {
+                int i = symbol.getName().hashCode() & mask;
+                while (symbols[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                symbols[i] = symbol;
+            }
+        }
     }
 
-    private boolean match(char expected) {
-        if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
-        current++;
+    private char advance() throws JafException {
+        fill(1);
         column++;
+        return buffer[position++];
+    }
+
+    private char peek() throws JafException {
+        if (!fill(1)) return '\0';
+        return buffer[position];
+    }
+
+    private char peekNext() throws JafException {
+        if (!fill(2)) return '\0';
+        return buffer[position + 1];
+    }
+
+    private boolean match(char expected) throws JafException {
+        if (!fill(1)) return false;
+        if (buffer[position] != expected) return false;
+        advance();
         return true;
     }
 
-    private boolean isAtEnd() {
-        return current >= source.length();
+    private boolean isAtEnd() throws JafException {
+        return !fill(1);
+    }
+
+    /**
+     * Makes sure the buffer holds at least {@code count} unread characters
+     * unless the source ends first, and returns whether it does.
+     */
+    private boolean fill(int count) throws JafException {
+        if (limit - position >= count) {
+            return true;
+        }
+        if (drained) {
+            return false;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        try {
+            while (limit < count) {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    drained = true;
+                    return false;
+                }
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new JafException("Error reading source: " + e.getMessage(), e);
+        }
+        return true;
     }
 
     private boolean isDigit(char c) {
@@ -217,12 +424,7 @@ public class Lexer {
         return isAlpha(c) || isDigit(c);
     }
 
-    private void addToken(Token.Type type) {
-        String lexeme = source.substring(start, current);
-        tokens.add(new Token(type, lexeme, null, line, column - lexeme.length()));
-    }
-
-    private void addToken(Token token) {
-        tokens.add(token);
+    private void token(TokenBuffer out, Token.Type type) {
+        out.add(type, startLine, startColumn);
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package jaf.syntax;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes a UTF-8 file through memory-mapped windows of at most
+ * {@link #WINDOW_SIZE} bytes. The operating system pages the file in as the
+ * decoder reaches it, so the file is never copied onto the heap as a whole,
+ * and files beyond 2 GB, which no single mapping can hold, read like any
+ * other. A character split between two windows is completed by mapping the
+ * next window from its first byte.
+ */
+final class MappedReader extends Reader {
+
+    static final int WINDOW_SIZE = 1 << 26;
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean flushed;
+
+    MappedReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+        windowStart = start;
+    }
+
+    @Override
+    public int read(char[] destination, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (flushed) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(destination, offset, length);
+        while (out.position() == offset) {
+            boolean last = windowStart + window.limit() == size;
+            CoderResult result = decoder.decode(window, out, last);
+            if (result.isOverflow()) {
+                break;
+            }
+            if (!last) {
+                map(windowStart + window.position());
+            } else {
+                if (!flushed) {
+                    decoder.flush(out);
+                    flushed = true;
+                }
+                break;
+            }
+        }
+        int count = out.position() - offset;
+        return count > 0 ? count : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,19 +1,26 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.NumberValue;
 
 public final class NumberLiteral implements Expression {
 
     private final double value;
+    private final NumberValue constant;
 
     public NumberLiteral(double value) {
         this.value = value;
+        this.constant = new NumberValue(value);
     }
 
     public double getValue() {
         return value;
     }
 
+    public NumberValue getConstant() {
+        return constant;
+    }
+
     @Override
     public <R> R accept(AstVisitor<R> visitor) {
         return visitor.visit(this);
@@ -0,0 +1,210 @@
+package jaf.syntax;
+
+import jaf.lang.JafException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a large script on a fork/join pool. The source is cut into chunks
+ * at top-level line breaks, each chunk is lexed and parsed as a program of
+ * its own, and the expressions are joined in order. Each chunk's lexer
+ * starts counting at the chunk's first line, so positions in the tree and
+ * in errors refer to the whole script.
+ *
+ * A line break is only a cut when it lies outside any string, comment and
+ * bracket, and the next line starts with a name, keyword, number or string.
+ * None of those tokens can continue an expression, so the expression before
+ * the cut is one the sequential parser would have ended there too, if the
+ * chunk before it parses at all. When some chunk does not, for example
+ * because an expression spans the cut as in {@code func f(n)} followed by
+ * its body on the next line, the script is parsed again sequentially, which
+ * produces the same tree or the same error as {@link Parser} would.
+ */
+public final class ParallelParser {
+
+    public static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final String source;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(String source, ForkJoinPool pool) {
+        this.source = source;
+        this.pool = pool;
+    }
+
+    public List<Expression> parseProgram() throws JafException {
+        int chunks = Math.min(pool.getParallelism() * 4, source.length() / MIN_CHUNK_SIZE);
+        List<int[]> cuts = chunks > 1 ? cuts(source.length() / chunks) : new ArrayList<int[]>();
+        if (cuts.isEmpty()) {
+            return sequential();
+        }
+
+        List<ForkJoinTask<List<Expression>>> tasks = new ArrayList<>();
+        int start = 0;
+        int line = 1;
+        for (int[] cut : cuts) {
+            tasks.add(pool.submit(chunk(start, cut[0], line)));
+            start = cut[0];
+            line = cut[1];
+        }
+        tasks.add(pool.submit(chunk(start, source.length(), line)));
+
+        List<Expression> expressions = new ArrayList<>();
+        try {
+            for (ForkJoinTask<List<Expression>> task : tasks) {
+                expressions.addAll(task.get());
+            }
+        } catch (ExecutionException e) {
+            // Checked exceptions of a submitted callable arrive wrapped.
+            Throwable cause = e.getCause();
+            while (cause != null && !(cause instanceof JafException)) {
+                cause = cause.getCause();
+            }
+            if (cause == null) {
+                throw new IllegalStateException(e.getCause());
+            }
+            for (ForkJoinTask<List<Expression>> task : tasks) {
+                task.cancel(false);
+            }
+            return sequential();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JafException("Parsing interrupted");
+        }
+        return expressions;
+    }
+
+    private List<Expression> sequential() throws JafException {
+        return new Parser(new TokenStream(new Lexer(source))).parseProgram();
+    }
+
+    private Callable<List<Expression>> chunk(final int start, final int end, final int line) {
+        return new Callable<List<Expression>>() {
+            @Override
+            public List<Expression> call() throws JafException {
+                Lexer lexer = new Lexer(new StringReader(source.substring(start, end)), line);
+                return new Parser(new TokenStream(lexer)).parseProgram();
+            }
+        };
+    }
+
+    /**
+     * Finds the cuts, at least {@code size} characters apart, as pairs of
+     * the offset and the line number where the next chunk starts. Besides
+     * strings, comments and brackets, the scan skips line breaks after which
+     * the expression must go on: after an operator, a comma, {@code else},
+     * {@code func} or its name, or the condition of {@code if} or
+     * {@code while} and the parameters of a function.
+     */
+    private List<int[]> cuts(int size) {
+        List<int[]> cuts = new ArrayList<>();
+        int depth = 0;
+        boolean pending = false;
+        boolean header = false;
+        String word = null;
+        String previousWord = null;
+        int line = 1;
+        int next = size;
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+                if (i >= next && depth == 0 && !pending && startsExpression(i)) {
+                    cuts.add(new int[] {i, line});
+                    next = i + size;
+                }
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                i++;
+                continue;
+            }
+            if (c == '#') {
+                while (i < source.length() && source.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            String current = null;
+            if (c == '"') {
+                for (i++; i < source.length() && source.charAt(i) != '"'; i++) {
+                    if (source.charAt(i) == '\n') {
+                        line++;
+                    }
+                }
+                i++;
+                pending = false;
+            } else if (c >= '0' && c <= '9') {
+                for (i++; i < source.length(); i++) {
+                    char d = source.charAt(i);
+                    boolean exponentSign = (d == '+' || d == '-')
+                            && (source.charAt(i - 1) == 'e' || source.charAt(i - 1) == 'E');
+                    if (!isNamePart(d) && d != '.' && !exponentSign) {
+                        break;
+                    }
+                }
+                pending = false;
+            } else if (isNamePart(c)) {
+                int start = i;
+                while (i < source.length() && isNamePart(source.charAt(i))) {
+                    i++;
+                }
+                current = source.substring(start, i);
+                pending = current.equals("else") || current.equals("func") || "func".equals(word);
+            } else {
+                if (c == '(' || c == '[' || c == '{') {
+                    if (depth == 0 && c == '(') {
+                        header = "if".equals(word) || "while".equals(word) || "func".equals(previousWord);
+                    }
+                    depth++;
+                    pending = true;
+                } else if (c == ')' || c == ']' || c == '}') {
+                    depth--;
+                    pending = depth == 0 && c == ')' && header;
+                    if (depth == 0) {
+                        header = false;
+                    }
+                } else {
+                    pending = true;
+                }
+                i++;
+            }
+            previousWord = word;
+            word = current;
+        }
+        return cuts;
+    }
+
+    /**
+     * Returns whether the line starting at {@code offset} begins with a
+     * token that cannot continue the expression before it.
+     */
+    private boolean startsExpression(int offset) {
+        int i = offset;
+        while (i < source.length() && (source.charAt(i) == ' ' || source.charAt(i) == '\t')) {
+            i++;
+        }
+        if (i == source.length()) {
+            return false;
+        }
+        char c = source.charAt(i);
+        if (c == '"' || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && c != '_') {
+            return false;
+        }
+        return !source.startsWith("else", i) || (i + 4 < source.length() && isNamePart(source.charAt(i + 4)));
+    }
+
+    private static boolean isNamePart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
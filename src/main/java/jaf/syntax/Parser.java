@@ -1,11 +1,48 @@
 package jaf.syntax;
 
 import jaf.lang.JafException;
+import jaf.lang.Symbol;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A Pratt parser: operands are parsed by {@link #access} and its
+ * {@link #primary} descent, infix operators by a single loop driven by the
+ * precedence table below, so each operator costs one table lookup however
+ * many precedence levels the language has.
+ */
 public class Parser {
 
+    private static final int ASSIGNMENT = 1;
+
+    /**
+     * The binding power of each token type as an infix operator, by
+     * ordinal; 0 for tokens that are not one.
+     */
+    private static final int[] PRECEDENCE = new int[Token.Type.values().length];
+    private static final BinaryOp.Operator[] OPERATORS = new BinaryOp.Operator[Token.Type.values().length];
+
+    static {
+        PRECEDENCE[Token.Type.ASSIGN.ordinal()] = ASSIGNMENT;
+        infix(Token.Type.OR, 2, BinaryOp.Operator.OR);
+        infix(Token.Type.AND, 3, BinaryOp.Operator.AND);
+        infix(Token.Type.EQUAL, 4, BinaryOp.Operator.EQUAL);
+        infix(Token.Type.NOT_EQUAL, 4, BinaryOp.Operator.NOT_EQUAL);
+        infix(Token.Type.LESS, 5, BinaryOp.Operator.LESS);
+        infix(Token.Type.LESS_EQUAL, 5, BinaryOp.Operator.LESS_EQUAL);
+        infix(Token.Type.GREATER, 5, BinaryOp.Operator.GREATER);
+        infix(Token.Type.GREATER_EQUAL, 5, BinaryOp.Operator.GREATER_EQUAL);
+        infix(Token.Type.PLUS, 6, BinaryOp.Operator.ADD);
+        infix(Token.Type.MINUS, 6, BinaryOp.Operator.SUBTRACT);
+        infix(Token.Type.MULTIPLY, 7, BinaryOp.Operator.MULTIPLY);
+        infix(Token.Type.DIVIDE, 7, BinaryOp.Operator.DIVIDE);
+    }
+
+    private static void infix(Token.Type type, int precedence, BinaryOp.Operator operator) {
+        PRECEDENCE[type.ordinal()] = precedence;
+        OPERATORS[type.ordinal()] = operator;
+    }
+
     private final TokenStream tokens;
 
     public Parser(TokenStream tokens) {
@@ -30,133 +67,49 @@ public class Parser {
     }
 
     private Expression expression() throws JafException {
-        return assignment();
+        return expression(ASSIGNMENT);
     }
 
-    private Expression assignment() throws JafException {
-        Expression expr = logicalOr();
-
-        if (tokens.match(Token.Type.ASSIGN)) {
-            if (expr instanceof Variable) {
-                Variable variable = (Variable) expr;
-                Expression value = assignment();
-                return new Assignment(variable.getName(), value);
-            } else if (expr instanceof ArrayAccess) {
-                ArrayAccess arrayAccess = (ArrayAccess) expr;
-                Expression value = assignment();
-                return new ArrayAssignment(arrayAccess.getArray(), arrayAccess.getIndex(), value);
-            } else {
-                Token equals = tokens.getTokens().get(tokens.getPosition() - 1);
-                throw new JafException(
-                        "Left side of assignment must be variable or array access",
-                        equals.getLine(), equals.getColumn()
-                );
+    /**
+     * Parses an expression whose infix operators all bind at least as
+     * tightly as {@code precedence}. Operators of one level associate to the
+     * left, assignment to the right.
+     */
+    private Expression expression(int precedence) throws JafException {
+        Expression left = access();
+
+        while (true) {
+            Token.Type type = tokens.peekType();
+            int binding = PRECEDENCE[type.ordinal()];
+            if (binding < precedence) {
+                return left;
             }
-        }
-
-        return expr;
-    }
-
-    private Expression logicalOr() throws JafException {
-        Expression expr = logicalAnd();
-
-        while (tokens.match(Token.Type.OR)) {
-            Expression right = logicalAnd();
-            expr = new BinaryOp(BinaryOp.Operator.OR, expr, right);
-        }
-
-        return expr;
-    }
-
-    private Expression logicalAnd() throws JafException {
-        Expression expr = equality();
-
-        while (tokens.match(Token.Type.AND)) {
-            Expression right = equality();
-            expr = new BinaryOp(BinaryOp.Operator.AND, expr, right);
-        }
-
-        return expr;
-    }
-
-    private Expression equality() throws JafException {
-        Expression expr = comparison();
-
-        while (tokens.match(Token.Type.EQUAL) || tokens.match(Token.Type.NOT_EQUAL)) {
-            Token operator = tokens.getTokens().get(tokens.getPosition() - 1);
-            Expression right = comparison();
-
-            BinaryOp.Operator op = operator.getType() == Token.Type.EQUAL
-                    ? BinaryOp.Operator.EQUAL
-                    : BinaryOp.Operator.NOT_EQUAL;
-
-            expr = new BinaryOp(op, expr, right);
-        }
-
-        return expr;
-    }
+            tokens.next();
 
-    private Expression comparison() throws JafException {
-        Expression expr = addition();
-
-        while (tokens.match(Token.Type.LESS) || tokens.match(Token.Type.LESS_EQUAL) ||
-                tokens.match(Token.Type.GREATER) || tokens.match(Token.Type.GREATER_EQUAL)) {
-
-            Token operator = tokens.getTokens().get(tokens.getPosition() - 1);
-            Expression right = addition();
-
-            BinaryOp.Operator op;
-            switch (operator.getType()) {
-                case LESS: op = BinaryOp.Operator.LESS; break;
-                case LESS_EQUAL: op = BinaryOp.Operator.LESS_EQUAL; break;
-                case GREATER: op = BinaryOp.Operator.GREATER; break;
-                case GREATER_EQUAL: op = BinaryOp.Operator.GREATER_EQUAL; break;
-                default: throw new JafException("Unknown comparison operator",
-                        operator.getLine(), operator.getColumn());
+            if (binding == ASSIGNMENT) {
+                return assignment(left);
             }
-
-            expr = new BinaryOp(op, expr, right);
-        }
-
-        return expr;
-    }
-
-    private Expression addition() throws JafException {
-        Expression expr = term();
-
-        while (tokens.match(Token.Type.PLUS) || tokens.match(Token.Type.MINUS)) {
-            Token operator = tokens.getTokens().get(tokens.getPosition() - 1);
-            Expression right = term();
-
-            BinaryOp.Operator op = operator.getType() == Token.Type.PLUS
-                    ? BinaryOp.Operator.ADD
-                    : BinaryOp.Operator.SUBTRACT;
-
-            expr = new BinaryOp(op, expr, right);
+            Expression right = expression(binding + 1);
+            left = new BinaryOp(OPERATORS[type.ordinal()], left, right);
         }
-
-        return expr;
     }
 
-    private Expression term() throws JafException {
-        Expression expr = factor();
-
-        while (tokens.match(Token.Type.MULTIPLY) || tokens.match(Token.Type.DIVIDE)) {
-            Token operator = tokens.getTokens().get(tokens.getPosition() - 1);
-            Expression right = factor();
-
-            BinaryOp.Operator op = operator.getType() == Token.Type.MULTIPLY
-                    ? BinaryOp.Operator.MULTIPLY
-                    : BinaryOp.Operator.DIVIDE;
-
-            expr = new BinaryOp(op, expr, right);
+    private Expression assignment(Expression target) throws JafException {
+        if (target instanceof Variable) {
+            Variable variable = (Variable) target;
+            checkNotBuiltin(variable.getSymbol(), "assigned");
+            Expression value = expression(ASSIGNMENT);
+            return new Assignment(variable.getSymbol(), value);
+        } else if (target instanceof ArrayAccess) {
+            ArrayAccess arrayAccess = (ArrayAccess) target;
+            Expression value = expression(ASSIGNMENT);
+            return new ArrayAssignment(arrayAccess.getArray(), arrayAccess.getIndex(), value);
+        } else {
+            throw new JafException(
+                    "Left side of assignment must be variable or array access",
+                    tokens.previousLine(), tokens.previousColumn()
+            );
         }
-
-        return expr;
-    }
-
-    private Expression factor() throws JafException {
-        return access();
     }
 
     private Expression access() throws JafException {
@@ -169,10 +122,15 @@ public class Parser {
         }
 
         if (expr instanceof Variable && tokens.match(Token.Type.LEFT_PAREN)) {
-            String functionName = ((Variable) expr).getName();
-            Expression argument = expression();
-            tokens.consume(Token.Type.RIGHT_PAREN, "Expected ')' after function argument");
-            return new FunctionCall(functionName, argument);
+            Symbol function = ((Variable) expr).getSymbol();
+            List<Expression> arguments = new ArrayList<>();
+            if (!tokens.check(Token.Type.RIGHT_PAREN)) {
+                do {
+                    arguments.add(expression());
+                } while (tokens.match(Token.Type.COMMA));
+            }
+            tokens.consume(Token.Type.RIGHT_PAREN, "Expected ')' after function arguments");
+            return new FunctionCall(function, arguments);
         }
 
         return expr;
@@ -186,13 +144,11 @@ public class Parser {
         }
 
         if (tokens.match(Token.Type.NUMBER)) {
-            Token token = tokens.getTokens().get(tokens.getPosition() - 1);
-            return new NumberLiteral(token.getNumberValue());
+            return new NumberLiteral(tokens.previousNumber());
         }
 
         if (tokens.match(Token.Type.STRING)) {
-            Token token = tokens.getTokens().get(tokens.getPosition() - 1);
-            return new StringLiteral(token.getStringValue());
+            return new StringLiteral(tokens.previousString());
         }
 
         if (tokens.match(Token.Type.LEFT_BRACKET)) {
@@ -216,8 +172,7 @@ public class Parser {
         }
 
         if (tokens.match(Token.Type.IDENTIFIER)) {
-            Token token = tokens.getTokens().get(tokens.getPosition() - 1);
-            return new Variable(token.getIdentifier());
+            return new Variable(tokens.previousSymbol());
         }
 
         if (tokens.match(Token.Type.LEFT_PAREN)) {
@@ -248,19 +203,42 @@ public class Parser {
     }
 
     private Expression funcDefinition() throws JafException {
-        Token nameToken = tokens.consume(Token.Type.IDENTIFIER, "Expected function name after 'func'");
-        String functionName = nameToken.getIdentifier();
+        tokens.consume(Token.Type.IDENTIFIER, "Expected function name after 'func'");
+        checkNotBuiltin(tokens.previousSymbol(), "redefined");
+        String functionName = tokens.previousSymbol().getName();
 
         tokens.consume(Token.Type.LEFT_PAREN, "Expected '(' after function name");
 
-        Token paramToken = tokens.consume(Token.Type.IDENTIFIER, "Expected parameter name");
-        String parameterName = paramToken.getIdentifier();
+        List<String> parameterNames = new ArrayList<>();
+        if (!tokens.check(Token.Type.RIGHT_PAREN)) {
+            do {
+                tokens.consume(Token.Type.IDENTIFIER, "Expected parameter name");
+                checkNotBuiltin(tokens.previousSymbol(), "used as a parameter");
+                String parameterName = tokens.previousSymbol().getName();
+                if (parameterNames.contains(parameterName)) {
+                    throw new JafException("Duplicate parameter '" + parameterName + "'",
+                            tokens.previousLine(), tokens.previousColumn());
+                }
+                parameterNames.add(parameterName);
+            } while (tokens.match(Token.Type.COMMA));
+        }
 
-        tokens.consume(Token.Type.RIGHT_PAREN, "Expected ')' after function parameter");
+        tokens.consume(Token.Type.RIGHT_PAREN, "Expected ')' after function parameters");
 
         Expression body = expression();
 
-        return new FunctionDefinition(functionName, parameterName, body);
+        return new FunctionDefinition(functionName, parameterNames, body);
+    }
+
+    /**
+     * Builtins are resolved by name before any variable, so binding one
+     * would be silently ignored; reject it instead.
+     */
+    private void checkNotBuiltin(Symbol name, String use) throws JafException {
+        if (name.isBuiltin()) {
+            throw new JafException("Builtin function '" + name + "' cannot be " + use,
+                    tokens.previousLine(), tokens.previousColumn());
+        }
     }
 
     private Expression whileExpression() throws JafException {
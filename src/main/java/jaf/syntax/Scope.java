@@ -0,0 +1,56 @@
+package jaf.syntax;
+
+import jaf.lang.Immutable;
+import jaf.lang.Symbol;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The names of a frame's slots. Lookups by {@link Symbol} hash by the
+ * symbol's id and compare by identity.
+ */
+public final class Scope implements Immutable {
+
+    private final List<String> names;
+    private final Symbol[] symbols;
+    private final Map<Symbol, Integer> slots;
+
+    public Scope(List<String> names) {
+        this.names = new ArrayList<>(names);
+        this.symbols = new Symbol[names.size()];
+        this.slots = new HashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = Symbol.of(this.names.get(i));
+            slots.put(symbols[i], i);
+        }
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String getName(int slot) {
+        return names.get(slot);
+    }
+
+    public Symbol getSymbol(int slot) {
+        return symbols[slot];
+    }
+
+    public int indexOf(Symbol symbol) {
+        Integer slot = slots.get(symbol);
+        return slot != null ? slot : -1;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    @Override
+    public String toString() {
+        return "Scope" + names;
+    }
+}
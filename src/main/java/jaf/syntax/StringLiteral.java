@@ -1,19 +1,26 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.StringValue;
 
 public final class StringLiteral implements Expression {
 
     private final String value;
+    private final StringValue constant;
 
     public StringLiteral(String value) {
         this.value = value;
+        this.constant = new StringValue(value);
     }
 
     public String getValue() {
         return value;
     }
 
+    public StringValue getConstant() {
+        return constant;
+    }
+
     @Override
     public <R> R accept(AstVisitor<R> visitor) {
         return visitor.visit(this);
@@ -0,0 +1,245 @@
+package jaf.syntax;
+
+import jaf.lang.Symbol;
+
+/**
+ * Tokens packed into parallel primitive arrays: a type, a line and a column
+ * per token, and for literals and identifiers an index into a separate
+ * table of numbers, strings and symbols. Filling the buffer allocates
+ * nothing once its arrays have grown to the batch size, and identifiers are
+ * the {@link Symbol}s the {@link Lexer} interned.
+ *
+ * {@link Token} objects are only created by {@link #get}, which the parser
+ * calls to report an error.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private byte[] types;
+    private int[] lines;
+    private int[] columns;
+    private int[] literals;
+    private int size;
+
+    private double[] numbers;
+    private int numberCount;
+    private Object[] texts;
+    private int textCount;
+
+    public TokenBuffer() {
+        this(64);
+    }
+
+    public TokenBuffer(int capacity) {
+        types = new byte[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        literals = new int[capacity];
+        numbers = new double[capacity];
+        texts = new Object[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    public int getColumn(int index) {
+        return columns[index];
+    }
+
+    public double getNumber(int index) {
+        if (types[index] != Token.Type.NUMBER.ordinal()) {
+            throw new IllegalStateException("Token is not NUMBER: " + getType(index));
+        }
+        return numbers[literals[index]];
+    }
+
+    public String getString(int index) {
+        if (types[index] != Token.Type.STRING.ordinal()) {
+            throw new IllegalStateException("Token is not STRING: " + getType(index));
+        }
+        return (String) texts[literals[index]];
+    }
+
+    public Symbol getSymbol(int index) {
+        if (types[index] != Token.Type.IDENTIFIER.ordinal()) {
+            throw new IllegalStateException("Token is not IDENTIFIER: " + getType(index));
+        }
+        return (Symbol) texts[literals[index]];
+    }
+
+    /**
+     * Returns the token at {@code index} as an object.
+     */
+    public Token get(int index) {
+        Token.Type type = getType(index);
+        switch (type) {
+            case NUMBER:
+                double value = numbers[literals[index]];
+                String lexeme = value == Math.rint(value) && Math.abs(value) < 1e15
+                        ? Long.toString((long) value) : Double.toString(value);
+                return new Token(type, lexeme, value, lines[index], columns[index]);
+            case STRING:
+                String text = (String) texts[literals[index]];
+                return new Token(type, '"' + text + '"', text, lines[index], columns[index]);
+            case IDENTIFIER:
+                return Token.identifier(((Symbol) texts[literals[index]]).getName(), lines[index], columns[index]);
+            case EOF:
+                return Token.eof(lines[index], columns[index]);
+            default:
+                return new Token(type, lexeme(type), null, lines[index], columns[index]);
+        }
+    }
+
+    public void add(Token.Type type, int line, int column) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type.ordinal();
+        lines[size] = line;
+        columns[size] = column;
+        literals[size] = -1;
+        size++;
+    }
+
+    public void addNumber(double value, int line, int column) {
+        add(Token.Type.NUMBER, line, column);
+        if (numberCount == numbers.length) {
+            double[] grown = new double[numbers.length * 2];
+            System.arraycopy(numbers, 0, grown, 0, numberCount);
+            numbers = grown;
+        }
+        literals[size - 1] = numberCount;
+        numbers[numberCount++] = value;
+    }
+
+    public void addString(String value, int line, int column) {
+        addText(Token.Type.STRING, value, line, column);
+    }
+
+    public void addSymbol(Symbol symbol, int line, int column) {
+        addText(Token.Type.IDENTIFIER, symbol, line, column);
+    }
+
+    private void addText(Token.Type type, Object text, int line, int column) {
+        add(type, line, column);
+        if (textCount == texts.length) {
+            Object[] grown = new Object[texts.length * 2];
+            System.arraycopy(texts, 0, grown, 0, textCount);
+            texts = grown;
+        }
+        literals[size - 1] = textCount;
+        texts[textCount++] = text;
+    }
+
+    public void add(Token token) {
+        switch (token.getType()) {
+            case NUMBER:
+                addNumber(token.getNumberValue(), token.getLine(), token.getColumn());
+                break;
+            case STRING:
+                addString(token.getStringValue(), token.getLine(), token.getColumn());
+                break;
+            case IDENTIFIER:
+                addSymbol(Symbol.of(token.getIdentifier()), token.getLine(), token.getColumn());
+                break;
+            default:
+                add(token.getType(), token.getLine(), token.getColumn());
+        }
+    }
+
+    public void clear() {
+        discard(size);
+    }
+
+    /**
+     * Drops the tokens before {@code from}, moving the rest to the front.
+     */
+    public void discard(int from) {
+        int numberFrom = numberCount;
+        int textFrom = textCount;
+        for (int i = from; i < size; i++) {
+            if (literals[i] >= 0) {
+                if (types[i] == Token.Type.NUMBER.ordinal()) {
+                    numberFrom = Math.min(numberFrom, literals[i]);
+                } else {
+                    textFrom = Math.min(textFrom, literals[i]);
+                }
+            }
+        }
+        int kept = size - from;
+        System.arraycopy(types, from, types, 0, kept);
+        System.arraycopy(lines, from, lines, 0, kept);
+        System.arraycopy(columns, from, columns, 0, kept);
+        System.arraycopy(literals, from, literals, 0, kept);
+        for (int i = 0; i < kept; i++) {
+            if (literals[i] >= 0) {
+                literals[i] -= types[i] == Token.Type.NUMBER.ordinal() ? numberFrom : textFrom;
+            }
+        }
+        System.arraycopy(numbers, numberFrom, numbers, 0, numberCount - numberFrom);
+        numberCount -= numberFrom;
+        System.arraycopy(texts, textFrom, texts, 0, textCount - textFrom);
+        for (int i = textCount - textFrom; i < textCount; i++) {
+            texts[i] = null;
+        }
+        textCount -= textFrom;
+        size = kept;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        byte[] grownTypes = new byte[capacity];
+        int[] grownLines = new int[capacity];
+        int[] grownColumns = new int[capacity];
+        int[] grownLiterals = new int[capacity];
+        System.arraycopy(types, 0, grownTypes, 0, size);
+        System.arraycopy(lines, 0, grownLines, 0, size);
+        System.arraycopy(columns, 0, grownColumns, 0, size);
+        System.arraycopy(literals, 0, grownLiterals, 0, size);
+        types = grownTypes;
+        lines = grownLines;
+        columns = grownColumns;
+        literals = grownLiterals;
+    }
+
+    private static String lexeme(Token.Type type) {
+        switch (type) {
+            case IF: return "if";
+            case ELSE: return "else";
+            case WHILE: return "while";
+            case FUNC: return "func";
+            case PLUS: return "+";
+            case MINUS: return "-";
+            case MULTIPLY: return "*";
+            case DIVIDE: return "/";
+            case EQUAL: return "==";
+            case NOT_EQUAL: return "!=";
+            case LESS: return "<";
+            case LESS_EQUAL: return "<=";
+            case GREATER: return ">";
+            case GREATER_EQUAL: return ">=";
+            case AND: return "&&";
+            case OR: return "||";
+            case ASSIGN: return "=";
+            case LEFT_PAREN: return "(";
+            case RIGHT_PAREN: return ")";
+            case LEFT_BRACE: return "{";
+            case RIGHT_BRACE: return "}";
+            case LEFT_BRACKET: return "[";
+            case RIGHT_BRACKET: return "]";
+            case SEMICOLON: return ";";
+            case COMMA: return ",";
+            default: return "";
+        }
+    }
+}
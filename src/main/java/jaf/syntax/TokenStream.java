@@ -2,51 +2,128 @@ package jaf.syntax;
 
 import jaf.lang.Immutable;
 import jaf.lang.JafException;
+import jaf.lang.Symbol;
 import java.util.List;
 
+/**
+ * The tokens of a script as the parser consumes them. A stream over a
+ * {@link Lexer} pulls {@link #BATCH_SIZE} tokens at a time into a
+ * {@link TokenBuffer} and drops each batch once the parser is through with
+ * it, keeping only the token consumed last, so parsing never holds the
+ * tokens of the whole script.
+ *
+ * The parser reads types, literals and positions straight from the buffer;
+ * {@link #peek} and {@link #previous} create {@link Token} objects and are
+ * meant for error messages.
+ */
 public final class TokenStream implements Immutable {
-    
-    private final List<Token> tokens;
+
+    public static final int BATCH_SIZE = 1 << 10;
+
+    private final Lexer lexer;
+    private final TokenBuffer buffer;
+    private int current = 0;
     private int position = 0;
-    
+
+    public TokenStream(Lexer lexer) {
+        this.lexer = lexer;
+        this.buffer = new TokenBuffer(BATCH_SIZE);
+    }
+
     public TokenStream(List<Token> tokens) {
-        this.tokens = tokens;
+        this.lexer = null;
+        this.buffer = new TokenBuffer(Math.max(tokens.size(), 1));
+        for (Token token : tokens) {
+            buffer.add(token);
+        }
     }
-    
-    public Token peek() {
-        if (isAtEnd()) {
-            return tokens.get(tokens.size() - 1);
+
+    /**
+     * Returns the index of the lookahead token in the buffer, scanning the
+     * next batch when the buffer is used up.
+     */
+    private int lookahead() throws JafException {
+        if (current == buffer.size()) {
+            if (lexer == null) {
+                throw new IllegalStateException("Token list does not end with EOF");
+            }
+            int kept = Math.max(current - 1, 0);
+            buffer.discard(kept);
+            current -= kept;
+            lexer.scan(buffer, BATCH_SIZE);
         }
-        return tokens.get(position);
+        return current;
+    }
+
+    public Token.Type peekType() throws JafException {
+        return buffer.getType(lookahead());
     }
-    
-    public Token next() {
+
+    public Token peek() throws JafException {
+        return buffer.get(lookahead());
+    }
+
+    public void next() throws JafException {
         if (!isAtEnd()) {
+            current++;
             position++;
         }
-        return tokens.get(position - 1);
     }
-    
-    public boolean isAtEnd() {
-        return position >= tokens.size() - 1;
+
+    /**
+     * Returns the token consumed last.
+     */
+    public Token previous() {
+        return buffer.get(current - 1);
+    }
+
+    public Token.Type previousType() {
+        return buffer.getType(current - 1);
+    }
+
+    public double previousNumber() {
+        return buffer.getNumber(current - 1);
+    }
+
+    public String previousString() {
+        return buffer.getString(current - 1);
     }
-    
-    public boolean check(Token.Type type) {
-        if (isAtEnd()) return false;
-        return peek().getType() == type;
+
+    public Symbol previousSymbol() {
+        return buffer.getSymbol(current - 1);
+    }
+
+    public int previousLine() {
+        return buffer.getLine(current - 1);
+    }
+
+    public int previousColumn() {
+        return buffer.getColumn(current - 1);
+    }
+
+    public boolean isAtEnd() throws JafException {
+        return peekType() == Token.Type.EOF;
     }
-    
-    public boolean match(Token.Type type) {
+
+    public boolean check(Token.Type type) throws JafException {
+        Token.Type next = peekType();
+        return next == type && next != Token.Type.EOF;
+    }
+
+    public boolean match(Token.Type type) throws JafException {
         if (check(type)) {
-            next();
+            current++;
+            position++;
             return true;
         }
         return false;
     }
-    
-    public Token consume(Token.Type type, String errorMessage) throws JafException {
+
+    public void consume(Token.Type type, String errorMessage) throws JafException {
         if (check(type)) {
-            return next();
+            current++;
+            position++;
+            return;
         }
         Token actual = peek();
         throw new JafException(
@@ -55,12 +132,8 @@ public final class TokenStream implements Immutable {
             actual.getLine(), actual.getColumn()
         );
     }
-    
+
     public int getPosition() {
         return position;
     }
-    
-    public List<Token> getTokens() {
-        return tokens;
-    }
 }
\ No newline at end of file
@@ -1,17 +1,46 @@
 package jaf.syntax;
 
 import jaf.lang.AstVisitor;
+import jaf.lang.Symbol;
 
 public final class Variable implements Expression {
     
-    private final String name;
+    private final Symbol symbol;
+    private final int depth;
+    private final int slot;
     
     public Variable(String name) {
-        this.name = name;
+        this(Symbol.of(name), -1, -1);
+    }
+    
+    public Variable(Symbol symbol) {
+        this(symbol, -1, -1);
+    }
+    
+    public Variable(Symbol symbol, int depth, int slot) {
+        this.symbol = symbol;
+        this.depth = depth;
+        this.slot = slot;
     }
     
     public String getName() {
-        return name;
+        return symbol.getName();
+    }
+    
+    public Symbol getSymbol() {
+        return symbol;
+    }
+    
+    public int getDepth() {
+        return depth;
+    }
+    
+    public int getSlot() {
+        return slot;
+    }
+    
+    public boolean isResolved() {
+        return slot >= 0;
     }
     
     @Override
@@ -21,6 +50,6 @@ public final class Variable implements Expression {
     
     @Override
     public String toString() {
-        return "Variable(" + name + ")";
+        return "Variable(" + symbol + ")";
     }
-}
\ No newline at end of file
+}
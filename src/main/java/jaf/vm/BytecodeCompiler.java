@@ -0,0 +1,415 @@
+package jaf.vm;
+
+import jaf.lang.AstVisitor;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.Symbol;
+import jaf.syntax.StringLiteral;
+import jaf.syntax.NumberLiteral;
+import jaf.syntax.IntLiteral;
+import jaf.syntax.BinaryOp;
+import jaf.syntax.Variable;
+import jaf.syntax.Assignment;
+import jaf.syntax.Block;
+import jaf.syntax.Expression;
+import jaf.syntax.IfExpression;
+import jaf.syntax.WhileExpression;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.ArrayLiteral;
+import jaf.syntax.ArrayAccess;
+import jaf.syntax.ArrayAssignment;
+import jaf.syntax.Scope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a resolved program into {@link Chunk}s. Every expression leaves
+ * exactly one value on the operand stack, mirroring the value the tree-walking
+ * interpreter would return for it.
+ */
+public final class BytecodeCompiler implements AstVisitor<Void> {
+
+    private final String name;
+    private final Scope scope;
+    private final FunctionDefinition definition;
+
+    private int[] code = new int[64];
+    private int size = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private int stackDepth = 0;
+    private int maxStack = 0;
+    private int callSites = 0;
+
+    private BytecodeCompiler(String name, Scope scope, FunctionDefinition definition) {
+        this.name = name;
+        this.scope = scope;
+        this.definition = definition;
+    }
+
+    public static Chunk compile(List<Expression> program, Scope globals) {
+        BytecodeCompiler compiler = new BytecodeCompiler("<program>", globals, null);
+
+        if (program.isEmpty()) {
+            compiler.emit(OpCode.VOID);
+        }
+        for (int i = 0; i < program.size(); i++) {
+            if (i > 0) {
+                compiler.emit(OpCode.POP);
+            }
+            program.get(i).accept(compiler);
+        }
+        compiler.emit(OpCode.RETURN);
+
+        return compiler.toChunk();
+    }
+
+    static Chunk compileFunction(FunctionDefinition node) {
+        if (!node.isResolved()) {
+            throw new JafRuntimeException("Function '" + node.getFunctionName() + "' has not been resolved");
+        }
+
+        BytecodeCompiler compiler = new BytecodeCompiler(node.getFunctionName(), node.getScope(), node);
+        node.getBody().accept(compiler);
+        compiler.emit(OpCode.RETURN);
+        if (!node.isMemoized()) {
+            // A tail call would replace the frame that stores the result.
+            compiler.markTailCalls();
+        }
+
+        return compiler.toChunk();
+    }
+
+    /**
+     * Turns every CALL whose result flows straight to RETURN, possibly
+     * through unconditional jumps, into a TAIL_CALL.
+     */
+    private void markTailCalls() {
+        for (int i = 0; i < size; i++) {
+            if (OpCode.opcode(code[i]) != OpCode.CALL) {
+                continue;
+            }
+            int next = i + 1;
+            while (OpCode.opcode(code[next]) == OpCode.JUMP) {
+                next = OpCode.operand(code[next]);
+            }
+            if (OpCode.opcode(code[next]) == OpCode.RETURN) {
+                code[i] = OpCode.encode(OpCode.TAIL_CALL, OpCode.operand(code[i]));
+            }
+        }
+    }
+
+    private Chunk toChunk() {
+        return new Chunk(name, Arrays.copyOf(code, size), constants.toArray(), maxStack, callSites,
+                scope, definition);
+    }
+
+    @Override
+    public Void visit(StringLiteral node) {
+        emit(OpCode.CONST, constant(node.getConstant()));
+        return null;
+    }
+
+    @Override
+    public Void visit(NumberLiteral node) {
+        emit(OpCode.CONST, constant(node.getConstant()));
+        return null;
+    }
+
+    @Override
+    public Void visit(IntLiteral node) {
+        emit(OpCode.CONST, constant(node.getConstant()));
+        return null;
+    }
+
+    @Override
+    public Void visit(BinaryOp node) {
+        node.getLeft().accept(this);
+        node.getRight().accept(this);
+
+        switch (node.getOperator()) {
+            case ADD: emit(OpCode.ADD); break;
+            case SUBTRACT: emit(OpCode.SUBTRACT); break;
+            case MULTIPLY: emit(OpCode.MULTIPLY); break;
+            case DIVIDE: emit(OpCode.DIVIDE); break;
+            case EQUAL: emit(OpCode.EQUAL); break;
+            case NOT_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case AND: emit(OpCode.AND); break;
+            case OR: emit(OpCode.OR); break;
+            default:
+                throw new JafRuntimeException("Unknown operator: " + node.getOperator());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Variable node) {
+        Symbol variable = node.getSymbol();
+
+        if (variable.isBuiltin()) {
+            emit(OpCode.CONST, constant(new BuiltinFunctionValue(variable.getName())));
+        } else if (node.isResolved() && node.getDepth() > 0) {
+            emit(OpCode.LOAD_OUTER, constant(node));
+        } else if (node.isResolved()) {
+            emit(OpCode.LOAD, node.getSlot());
+        } else {
+            emit(OpCode.LOAD_NAME, constant(variable));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Assignment node) {
+        node.getValue().accept(this);
+
+        if (node.isResolved()) {
+            checkLocal(node.getDepth(), node.getVariableName());
+            emit(OpCode.STORE, node.getSlot());
+        } else {
+            emit(OpCode.STORE_NAME, constant(node.getVariable()));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Block node) {
+        List<Expression> expressions = node.getExpressions();
+
+        if (expressions.isEmpty()) {
+            emit(OpCode.VOID);
+        }
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i > 0) {
+                emit(OpCode.POP);
+            }
+            expressions.get(i).accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(IfExpression node) {
+        node.getCondition().accept(this);
+        int elseJump = emitJump(OpCode.IF_FALSE);
+
+        node.getThenBranch().accept(this);
+        int endJump = emitJump(OpCode.JUMP);
+        stackDepth--;
+
+        patch(elseJump);
+        if (node.hasElseBranch()) {
+            node.getElseBranch().accept(this);
+        } else {
+            emit(OpCode.VOID);
+        }
+
+        patch(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visit(WhileExpression node) {
+        emit(OpCode.LOOP_START);
+        emit(OpCode.VOID);
+
+        int loopStart = size;
+        emit(OpCode.LOOP_CHECK);
+        node.getCondition().accept(this);
+        int exitJump = emitJump(OpCode.WHILE_FALSE);
+
+        emit(OpCode.POP);
+        node.getBody().accept(this);
+        emit(OpCode.JUMP, loopStart);
+
+        patch(exitJump);
+        emit(OpCode.LOOP_END);
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionDefinition node) {
+        emit(OpCode.DEFINE, constant(compileFunction(node)));
+        emit(OpCode.STORE, node.getSlot());
+        return null;
+    }
+
+    @Override
+    public Void visit(FunctionCall node) {
+        String functionName = node.getFunctionName();
+        List<Expression> arguments = node.getArguments();
+
+        int builtin = node.isBuiltin() ? builtinOpcode(functionName, arguments.size()) : -1;
+        if (builtin >= 0) {
+            for (Expression argument : arguments) {
+                argument.accept(this);
+            }
+            emit(builtin);
+            return null;
+        }
+
+        if (node.isBuiltin()) {
+            emit(OpCode.CONST, constant(new BuiltinFunctionValue(functionName)));
+        } else {
+            emit(OpCode.FUNCTION, constant(node));
+        }
+        for (Expression argument : arguments) {
+            argument.accept(this);
+        }
+
+        if (arguments.size() > OpCode.MAX_ARGUMENTS) {
+            throw new JafRuntimeException("Too many arguments in call of '" + functionName + "'");
+        }
+        if (callSites > OpCode.MAX_CALL_SITES) {
+            throw new JafRuntimeException("Too many calls in '" + name + "'");
+        }
+        emit(OpCode.CALL, OpCode.callOperand(callSites++, arguments.size()));
+        return null;
+    }
+
+    /**
+     * Returns the dedicated opcode of a builtin call, or -1 when the call has
+     * to go through CALL, which also reports a wrong argument count.
+     */
+    private static int builtinOpcode(String name, int argumentCount) {
+        switch (name) {
+            case "length":
+                return argumentCount == 1 ? OpCode.LENGTH : -1;
+            case "print":
+                return argumentCount == 1 ? OpCode.PRINT : -1;
+            case "mmap":
+                return argumentCount == 1 ? OpCode.MMAP : -1;
+            case "save":
+                return argumentCount == 2 ? OpCode.SAVE : -1;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public Void visit(ArrayLiteral node) {
+        for (Expression element : node.getElements()) {
+            element.accept(this);
+            emit(OpCode.ELEMENT);
+        }
+        emit(OpCode.ARRAY, node.getElements().size());
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAccess node) {
+        node.getArray().accept(this);
+        emit(OpCode.ARRAY_CHECK);
+        node.getIndex().accept(this);
+        emit(OpCode.INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visit(ArrayAssignment node) {
+        node.getArray().accept(this);
+        emit(OpCode.ARRAY_CHECK);
+        node.getIndex().accept(this);
+        emit(OpCode.INDEX_CHECK);
+        node.getValue().accept(this);
+        emit(OpCode.STORE_INDEX);
+        return null;
+    }
+
+    private void checkLocal(int depth, String variableName) {
+        if (depth != 0) {
+            throw new JafRuntimeException("Unsupported variable depth " + depth + " for '" + variableName + "'");
+        }
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            if (index > OpCode.MAX_OPERAND) {
+                throw new JafRuntimeException("Too many constants in '" + name + "'");
+            }
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private void emit(int opcode) {
+        emit(opcode, 0);
+    }
+
+    private void emit(int opcode, int operand) {
+        if (operand > OpCode.MAX_OPERAND) {
+            throw new JafRuntimeException("Operand out of range in '" + name + "': " + operand);
+        }
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = OpCode.encode(opcode, operand);
+
+        stackDepth += stackEffect(opcode, operand);
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private int emitJump(int opcode) {
+        emit(opcode, 0);
+        return size - 1;
+    }
+
+    private void patch(int jump) {
+        if (size > OpCode.MAX_OPERAND) {
+            throw new JafRuntimeException("Code too large in '" + name + "'");
+        }
+        code[jump] = OpCode.encode(OpCode.opcode(code[jump]), size);
+    }
+
+    private static int stackEffect(int opcode, int operand) {
+        switch (opcode) {
+            case OpCode.CONST:
+            case OpCode.VOID:
+            case OpCode.LOAD:
+            case OpCode.LOAD_NAME:
+            case OpCode.LOAD_OUTER:
+            case OpCode.DEFINE:
+            case OpCode.FUNCTION:
+                return 1;
+            case OpCode.POP:
+            case OpCode.ADD:
+            case OpCode.SUBTRACT:
+            case OpCode.MULTIPLY:
+            case OpCode.DIVIDE:
+            case OpCode.EQUAL:
+            case OpCode.NOT_EQUAL:
+            case OpCode.LESS:
+            case OpCode.LESS_EQUAL:
+            case OpCode.GREATER:
+            case OpCode.GREATER_EQUAL:
+            case OpCode.AND:
+            case OpCode.OR:
+            case OpCode.IF_FALSE:
+            case OpCode.WHILE_FALSE:
+            case OpCode.RETURN:
+            case OpCode.INDEX:
+                return -1;
+            case OpCode.STORE_INDEX:
+                return -2;
+            case OpCode.CALL:
+                return -OpCode.argumentCount(operand);
+            case OpCode.SAVE:
+                return -1;
+            case OpCode.ARRAY:
+                return 1 - operand;
+            default:
+                return 0;
+        }
+    }
+}
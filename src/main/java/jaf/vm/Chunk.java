@@ -0,0 +1,84 @@
+package jaf.vm;
+
+import jaf.lang.Immutable;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.Scope;
+
+public final class Chunk implements Immutable {
+
+    private final String name;
+    private final int[] code;
+    private final Object[] constants;
+    private final int maxStack;
+    private final int callSites;
+    private final Scope scope;
+    private final FunctionDefinition definition;
+
+    Chunk(String name, int[] code, Object[] constants, int maxStack, int callSites,
+          Scope scope, FunctionDefinition definition) {
+        this.name = name;
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.callSites = callSites;
+        this.scope = scope;
+        this.definition = definition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int[] getCode() {
+        return code;
+    }
+
+    Object[] getConstants() {
+        return constants;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Number of CALL and TAIL_CALL instructions, whose operands number them.
+     */
+    public int getCallSites() {
+        return callSites;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public FunctionDefinition getDefinition() {
+        return definition;
+    }
+
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("== ").append(name).append(" ==\n");
+        for (int ip = 0; ip < code.length; ip++) {
+            int opcode = OpCode.opcode(code[ip]);
+            int operand = OpCode.operand(code[ip]);
+            sb.append(String.format("%04d %-14s %d", ip, OpCode.name(opcode), operand));
+            if (opcode == OpCode.CONST || opcode == OpCode.LOAD_NAME || opcode == OpCode.LOAD_OUTER || opcode == OpCode.STORE_NAME
+                    || opcode == OpCode.FUNCTION || opcode == OpCode.DEFINE) {
+                sb.append("  ; ").append(constants[operand]);
+            }
+            sb.append('\n');
+        }
+        for (Object constant : constants) {
+            if (constant instanceof Chunk) {
+                sb.append('\n').append(((Chunk) constant).disassemble());
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk(" + name + ")";
+    }
+}
@@ -0,0 +1,112 @@
+package jaf.vm;
+
+/**
+ * Instruction set of the Jaf virtual machine.
+ *
+ * Every instruction is a single int word: the opcode in the low 8 bits and
+ * an unsigned 24-bit operand (constant index, slot or jump target) above it.
+ * Variables of enclosing frames are read by LOAD_OUTER, whose operand
+ * indexes the resolved {@link jaf.syntax.Variable} in the constant pool.
+ * FUNCTION looks up the callee of the {@link jaf.syntax.FunctionCall} in its
+ * constant. The operand of CALL and TAIL_CALL packs the argument count into
+ * its low 8 bits and numbers the call site for the VM's inline caches above
+ * them. TAIL_CALL is a CALL whose result is returned unchanged; it
+ * replaces the caller's frame instead of pushing a new one. LOOP_START and
+ * LOOP_END bracket a while loop so that the iteration count of the loop
+ * around it is restored when it exits.
+ */
+public final class OpCode {
+
+    public static final int CONST = 0;
+    public static final int VOID = 1;
+    public static final int POP = 2;
+
+    public static final int LOAD = 3;
+    public static final int LOAD_NAME = 4;
+    public static final int STORE = 5;
+    public static final int STORE_NAME = 6;
+
+    public static final int ADD = 7;
+    public static final int SUBTRACT = 8;
+    public static final int MULTIPLY = 9;
+    public static final int DIVIDE = 10;
+    public static final int EQUAL = 11;
+    public static final int NOT_EQUAL = 12;
+    public static final int LESS = 13;
+    public static final int LESS_EQUAL = 14;
+    public static final int GREATER = 15;
+    public static final int GREATER_EQUAL = 16;
+    public static final int AND = 17;
+    public static final int OR = 18;
+
+    public static final int JUMP = 19;
+    public static final int IF_FALSE = 20;
+    public static final int WHILE_FALSE = 21;
+    public static final int LOOP_START = 22;
+    public static final int LOOP_CHECK = 23;
+
+    public static final int DEFINE = 24;
+    public static final int FUNCTION = 25;
+    public static final int CALL = 26;
+    public static final int RETURN = 27;
+    public static final int LENGTH = 28;
+    public static final int PRINT = 29;
+
+    public static final int ELEMENT = 30;
+    public static final int ARRAY = 31;
+    public static final int ARRAY_CHECK = 32;
+    public static final int INDEX = 33;
+    public static final int INDEX_CHECK = 34;
+    public static final int STORE_INDEX = 35;
+    public static final int MMAP = 36;
+    public static final int LOAD_OUTER = 37;
+    public static final int TAIL_CALL = 38;
+    public static final int SAVE = 39;
+    public static final int LOOP_END = 40;
+
+    public static final int MAX_OPERAND = (1 << 24) - 1;
+    public static final int MAX_ARGUMENTS = 0xFF;
+    public static final int MAX_CALL_SITES = 0xFFFF;
+
+    private static final String[] NAMES = {
+            "CONST", "VOID", "POP",
+            "LOAD", "LOAD_NAME", "STORE", "STORE_NAME",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "EQUAL", "NOT_EQUAL",
+            "LESS", "LESS_EQUAL", "GREATER", "GREATER_EQUAL", "AND", "OR",
+            "JUMP", "IF_FALSE", "WHILE_FALSE", "LOOP_START", "LOOP_CHECK",
+            "DEFINE", "FUNCTION", "CALL", "RETURN", "LENGTH", "PRINT",
+            "ELEMENT", "ARRAY", "ARRAY_CHECK", "INDEX", "INDEX_CHECK", "STORE_INDEX", "MMAP",
+            "LOAD_OUTER", "TAIL_CALL", "SAVE", "LOOP_END"
+    };
+
+    private OpCode() {
+    }
+
+    public static int encode(int opcode, int operand) {
+        return opcode | (operand << 8);
+    }
+
+    public static int opcode(int instruction) {
+        return instruction & 0xFF;
+    }
+
+    public static int operand(int instruction) {
+        return instruction >>> 8;
+    }
+
+    public static int callOperand(int site, int argumentCount) {
+        return site << 8 | argumentCount;
+    }
+
+    public static int callSite(int operand) {
+        return operand >>> 8;
+    }
+
+    public static int argumentCount(int operand) {
+        return operand & 0xFF;
+    }
+
+    public static String name(int opcode) {
+        return opcode >= 0 && opcode < NAMES.length ? NAMES[opcode] : "UNKNOWN(" + opcode + ")";
+    }
+}
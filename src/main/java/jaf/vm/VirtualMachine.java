@@ -0,0 +1,513 @@
+package jaf.vm;
+
+import jaf.lang.Value;
+import jaf.lang.JafRuntimeException;
+import jaf.lang.NumberValue;
+import jaf.lang.VoidValue;
+import jaf.lang.FunctionValue;
+import jaf.lang.ArrayValue;
+import jaf.lang.BuiltinFunctionValue;
+import jaf.lang.Governor;
+import jaf.lang.Limits;
+import jaf.lang.Symbol;
+import jaf.semantics.Environment;
+import jaf.semantics.MemoCache;
+import jaf.semantics.Operations;
+import jaf.syntax.FunctionCall;
+import jaf.syntax.FunctionDefinition;
+import jaf.syntax.Variable;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public final class VirtualMachine {
+
+    private static final int MAX_FRAMES = Integer.getInteger("jaf.vm.maxFrames", 10_000_000);
+    private static final int MAX_POLYMORPHISM = 4;
+
+    private final Map<FunctionDefinition, Target> targets = new IdentityHashMap<>();
+    private final Governor governor;
+    private final PrintWriter output;
+
+    private Value[] stack = new Value[256];
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+    private int[] loopCounts = new int[16];
+    private int loopDepth = 0;
+
+    public VirtualMachine() {
+        this(Governor.unsupervised(Limits.DEFAULT));
+    }
+
+    public VirtualMachine(Governor governor) {
+        this(governor, new PrintWriter(System.out, true));
+    }
+
+    public VirtualMachine(Governor governor, PrintWriter output) {
+        this.governor = governor;
+        this.output = output;
+    }
+
+    public Value execute(Chunk program, Environment globals) {
+        frameCount = 0;
+        loopDepth = 0;
+        ensureStack(0, program.getMaxStack());
+        frames[frameCount++] = new Frame(new Target(program), globals, 0);
+        return run();
+    }
+
+    private Value run() {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.chunk.getCode();
+        Object[] constants = frame.chunk.getConstants();
+        Environment env = frame.env;
+        Value[] stack = this.stack;
+        int ip = frame.ip;
+        int sp = frame.base;
+
+        while (true) {
+            int instruction = code[ip++];
+            int operand = instruction >>> 8;
+
+            switch (instruction & 0xFF) {
+                case OpCode.CONST:
+                    stack[sp++] = (Value) constants[operand];
+                    break;
+
+                case OpCode.VOID:
+                    stack[sp++] = VoidValue.INSTANCE;
+                    break;
+
+                case OpCode.POP:
+                    sp--;
+                    break;
+
+                case OpCode.LOAD:
+                    stack[sp++] = env.get(0, operand, frame.chunk.getScope().getSymbol(operand));
+                    break;
+
+                case OpCode.LOAD_OUTER: {
+                    Variable variable = (Variable) constants[operand];
+                    stack[sp++] = env.get(variable.getDepth(), variable.getSlot(), variable.getSymbol());
+                    break;
+                }
+
+                case OpCode.LOAD_NAME:
+                    stack[sp++] = env.get((Symbol) constants[operand]);
+                    break;
+
+                case OpCode.STORE:
+                    env = env.put(0, operand, frame.chunk.getScope().getSymbol(operand), stack[sp - 1]);
+                    break;
+
+                case OpCode.STORE_NAME:
+                    env = env.put((Symbol) constants[operand], stack[sp - 1]);
+                    break;
+
+                case OpCode.ADD:
+                    sp--;
+                    stack[sp - 1] = Operations.add(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.SUBTRACT:
+                    sp--;
+                    stack[sp - 1] = Operations.subtract(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.MULTIPLY:
+                    sp--;
+                    stack[sp - 1] = Operations.multiply(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.DIVIDE:
+                    sp--;
+                    stack[sp - 1] = Operations.divide(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.EQUAL:
+                    sp--;
+                    stack[sp - 1] = Operations.equal(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.NOT_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Operations.notEqual(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.LESS:
+                    sp--;
+                    stack[sp - 1] = Operations.less(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.LESS_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Operations.lessEqual(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.GREATER:
+                    sp--;
+                    stack[sp - 1] = Operations.greater(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.GREATER_EQUAL:
+                    sp--;
+                    stack[sp - 1] = Operations.greaterEqual(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.AND:
+                    sp--;
+                    stack[sp - 1] = Operations.and(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.OR:
+                    sp--;
+                    stack[sp - 1] = Operations.or(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.JUMP:
+                    ip = operand;
+                    break;
+
+                case OpCode.IF_FALSE:
+                    if (!Operations.toBoolean(stack[--sp], "if condition")) {
+                        ip = operand;
+                    }
+                    break;
+
+                case OpCode.WHILE_FALSE:
+                    if (!Operations.toBoolean(stack[--sp], "while condition")) {
+                        ip = operand;
+                    }
+                    break;
+
+                case OpCode.LOOP_START:
+                    if (loopDepth == loopCounts.length) {
+                        loopCounts = Arrays.copyOf(loopCounts, loopDepth * 2);
+                    }
+                    loopCounts[loopDepth++] = governor.enterLoop();
+                    break;
+
+                case OpCode.LOOP_END:
+                    governor.exitLoop(loopCounts[--loopDepth]);
+                    break;
+
+                case OpCode.LOOP_CHECK:
+                    governor.iterate();
+                    break;
+
+                case OpCode.DEFINE: {
+                    Chunk chunk = (Chunk) constants[operand];
+                    FunctionDefinition definition = chunk.getDefinition();
+                    if (targets.get(definition) == null) {
+                        targets.put(definition, new Target(chunk));
+                    }
+                    stack[sp++] = new FunctionValue(definition, env);
+                    break;
+                }
+
+                case OpCode.FUNCTION: {
+                    FunctionCall call = (FunctionCall) constants[operand];
+                    Symbol name = call.getFunction();
+                    Value callee = call.isResolved() ? env.find(call.getDepth(), call.getSlot(), name) : env.find(name);
+                    stack[sp++] = Operations.toCallable(callee, name.getName());
+                    break;
+                }
+
+                case OpCode.CALL: {
+                    int argumentCount = OpCode.argumentCount(operand);
+                    int arguments = sp - argumentCount;
+                    Value callee = stack[arguments - 1];
+                    if (callee instanceof BuiltinFunctionValue) {
+                        Value result = callBuiltin((BuiltinFunctionValue) callee, stack, arguments, sp);
+                        sp = arguments - 1;
+                        stack[sp++] = result;
+                        break;
+                    }
+
+                    FunctionValue function = (FunctionValue) callee;
+                    FunctionDefinition definition = function.getDefinition();
+                    int site = OpCode.callSite(operand);
+                    Target target = frame.target.cache[site];
+                    if (target == null || target.definition != definition) {
+                        target = miss(frame.target, site, definition);
+                    }
+                    Chunk chunk = target.chunk;
+                    governor.tick();
+                    Value key = memoKey(target, stack, arguments, argumentCount);
+                    if (key != null) {
+                        Value cached = target.memo.get(key);
+                        if (cached != null) {
+                            sp = arguments - 1;
+                            stack[sp++] = cached;
+                            break;
+                        }
+                    }
+
+                    if (frameCount == MAX_FRAMES) {
+                        throw new JafRuntimeException(
+                                String.format("Call depth limit exceeded (%d). Possible infinite recursion", MAX_FRAMES)
+                        );
+                    }
+
+                    frame.ip = ip;
+                    frame.env = env;
+
+                    env = bind(function, chunk, stack, arguments, argumentCount);
+                    sp = arguments - 1;
+                    stack = ensureStack(sp, chunk.getMaxStack());
+                    frame = new Frame(target, env, sp);
+                    frame.memoKey = key;
+                    if (frameCount == frames.length) {
+                        frames = Arrays.copyOf(frames, (int) Math.min((long) frameCount * 2, MAX_FRAMES));
+                    }
+                    frames[frameCount++] = frame;
+
+                    code = chunk.getCode();
+                    constants = chunk.getConstants();
+                    ip = 0;
+                    break;
+                }
+
+                case OpCode.TAIL_CALL: {
+                    int argumentCount = OpCode.argumentCount(operand);
+                    int arguments = sp - argumentCount;
+                    Value callee = stack[arguments - 1];
+                    if (callee instanceof BuiltinFunctionValue) {
+                        Value result = callBuiltin((BuiltinFunctionValue) callee, stack, arguments, sp);
+                        sp = arguments - 1;
+                        stack[sp++] = result;
+                        break;
+                    }
+
+                    FunctionValue function = (FunctionValue) callee;
+                    FunctionDefinition definition = function.getDefinition();
+                    int site = OpCode.callSite(operand);
+                    Target target = frame.target.cache[site];
+                    if (target == null || target.definition != definition) {
+                        target = miss(frame.target, site, definition);
+                    }
+                    Chunk chunk = target.chunk;
+                    governor.tick();
+                    Value key = memoKey(target, stack, arguments, argumentCount);
+                    if (key != null) {
+                        Value cached = target.memo.get(key);
+                        if (cached != null) {
+                            sp = arguments - 1;
+                            stack[sp++] = cached;
+                            break;
+                        }
+                    }
+
+                    env = bind(function, chunk, stack, arguments, argumentCount);
+                    sp = frame.base;
+                    stack = ensureStack(sp, chunk.getMaxStack());
+                    frame.target = target;
+                    frame.chunk = chunk;
+                    frame.env = env;
+                    frame.memoKey = key;
+
+                    code = chunk.getCode();
+                    constants = chunk.getConstants();
+                    ip = 0;
+                    break;
+                }
+
+                case OpCode.RETURN: {
+                    Value result = stack[--sp];
+                    if (frame.memoKey != null) {
+                        frame.target.memo.put(frame.memoKey, result);
+                    }
+                    frames[--frameCount] = null;
+                    if (frameCount == 0) {
+                        Arrays.fill(stack, 0, sp, null);
+                        return result;
+                    }
+
+                    frame = frames[frameCount - 1];
+                    code = frame.chunk.getCode();
+                    constants = frame.chunk.getConstants();
+                    env = frame.env;
+                    ip = frame.ip;
+                    stack[sp++] = result;
+                    break;
+                }
+
+                case OpCode.LENGTH:
+                    stack[sp - 1] = Operations.length(stack[sp - 1]);
+                    break;
+
+                case OpCode.PRINT:
+                    output.println(stack[sp - 1]);
+                    stack[sp - 1] = VoidValue.INSTANCE;
+                    break;
+
+                case OpCode.MMAP:
+                    stack[sp - 1] = Operations.mmap(stack[sp - 1]);
+                    break;
+
+                case OpCode.SAVE:
+                    sp--;
+                    stack[sp - 1] = Operations.save(stack[sp - 1], stack[sp]);
+                    break;
+
+                case OpCode.ELEMENT:
+                    Operations.toElement(stack[sp - 1]);
+                    break;
+
+                case OpCode.ARRAY: {
+                    double[] elements = new double[operand];
+                    for (int i = 0; i < operand; i++) {
+                        elements[i] = ((NumberValue) stack[sp - operand + i]).getValue();
+                    }
+                    sp -= operand;
+                    stack[sp++] = governor.allocate(new ArrayValue(elements));
+                    break;
+                }
+
+                case OpCode.ARRAY_CHECK:
+                    Operations.toArray(stack[sp - 1]);
+                    break;
+
+                case OpCode.INDEX: {
+                    Value index = stack[--sp];
+                    ArrayValue array = (ArrayValue) stack[sp - 1];
+                    stack[sp - 1] = array.get((int) Operations.toNumber(index, "array access"));
+                    break;
+                }
+
+                case OpCode.INDEX_CHECK:
+                    Operations.toNumber(stack[sp - 1], "array element assignment");
+                    break;
+
+                case OpCode.STORE_INDEX: {
+                    Value value = stack[--sp];
+                    Value index = stack[--sp];
+                    ArrayValue array = (ArrayValue) stack[sp - 1];
+                    array.set((int) Operations.toNumber(index, "array element assignment"),
+                            Operations.toElement(value));
+                    stack[sp - 1] = value;
+                    break;
+                }
+
+                default:
+                    throw new JafRuntimeException("Unknown opcode: " + OpCode.name(instruction & 0xFF));
+            }
+        }
+    }
+
+    /**
+     * Creates the callee's frame with the arguments on the operand stack
+     * stored straight into its parameter slots.
+     */
+    private static Environment bind(FunctionValue function, Chunk chunk, Value[] stack, int arguments, int count) {
+        FunctionDefinition definition = function.getDefinition();
+        Operations.checkArgumentCount(definition.getFunctionName(), definition.getArity(), count);
+
+        Environment env = function.getClosure().createChild(chunk.getScope());
+        for (int i = 0; i < count; i++) {
+            env = env.put(0, i, definition.getParameter(i), stack[arguments + i]);
+        }
+        return env;
+    }
+
+    private Value callBuiltin(BuiltinFunctionValue builtin, Value[] stack, int arguments, int sp) {
+        return Operations.callBuiltin(builtin.getName(), Arrays.copyOfRange(stack, arguments, sp), output);
+    }
+
+    /**
+     * Looks up the callee of a call site whose monomorphic entry did not
+     * match. The site keeps up to {@link #MAX_POLYMORPHISM} targets; beyond
+     * that it is megamorphic and falls back to the definition table.
+     */
+    private Target miss(Target caller, int site, FunctionDefinition definition) {
+        Target[] entries = caller.polymorphic[site];
+        if (entries == null) {
+            entries = new Target[MAX_POLYMORPHISM];
+            caller.polymorphic[site] = entries;
+        }
+
+        Target target = null;
+        for (int i = 0; i < entries.length && target == null; i++) {
+            if (entries[i] == null) {
+                entries[i] = target(definition);
+            }
+            if (entries[i].definition == definition) {
+                target = entries[i];
+            }
+        }
+        if (target == null) {
+            target = target(definition);
+        }
+
+        caller.cache[site] = target;
+        return target;
+    }
+
+    private Target target(FunctionDefinition definition) {
+        Target target = targets.get(definition);
+        if (target == null) {
+            target = new Target(BytecodeCompiler.compileFunction(definition));
+            targets.put(definition, target);
+        }
+        return target;
+    }
+
+    /**
+     * Returns the argument to look up and store the result under when the
+     * call is one of a memoized function, or null.
+     */
+    private static Value memoKey(Target target, Value[] stack, int arguments, int argumentCount) {
+        if (target.memo == null || argumentCount != 1 || !MemoCache.isCacheable(stack[arguments])) {
+            return null;
+        }
+        return stack[arguments];
+    }
+
+    private Value[] ensureStack(int sp, int needed) {
+        if (sp + needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + needed));
+        }
+        return stack;
+    }
+
+    private static final class Frame {
+
+        Target target;
+        Chunk chunk;
+        Environment env;
+        Value memoKey;
+        int ip;
+        final int base;
+
+        Frame(Target target, Environment env, int base) {
+            this.target = target;
+            this.chunk = target.chunk;
+            this.env = env;
+            this.base = base;
+        }
+    }
+
+    /**
+     * A chunk as run by this VM, with the inline caches of its call sites.
+     * {@code cache} holds the target each site called last, so a site that
+     * keeps calling the same definition costs one reference comparison.
+     */
+    private static final class Target {
+
+        final Chunk chunk;
+        final FunctionDefinition definition;
+        final Target[] cache;
+        final Target[][] polymorphic;
+        final MemoCache memo;
+
+        Target(Chunk chunk) {
+            this.chunk = chunk;
+            this.definition = chunk.getDefinition();
+            this.memo = definition != null && definition.isMemoized() ? new MemoCache() : null;
+            this.cache = new Target[chunk.getCallSites()];
+            this.polymorphic = new Target[chunk.getCallSites()][];
+        }
+    }
+}